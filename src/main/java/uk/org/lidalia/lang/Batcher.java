@@ -0,0 +1,257 @@
+package uk.org.lidalia.lang;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Coalesces individually submitted items into batches, handing each batch to a {@link Handler} as a single unit of work
+ * on an {@link Executor}.
+ *
+ * Items are batched per key. A batch is dispatched as soon as it holds {@code maxBatchSize} items, or when
+ * {@code maxDelay} has elapsed since its first item was submitted, whichever comes first.
+ *
+ * Each submission returns a {@link Future} that completes when the batch containing the item has been handled. The batch
+ * is the unit of work: if the handler throws, every item in the batch fails with the same exception.
+ *
+ * @param <K> the type of the key items are grouped by
+ * @param <T> the type of the items
+ */
+public class Batcher<K, T> implements AutoCloseable {
+
+    /**
+     * Does the work for a batch of items.
+     *
+     * @param <K> the type of the key items are grouped by
+     * @param <T> the type of the items
+     */
+    @FunctionalInterface
+    public interface Handler<K, T> {
+
+        /**
+         * @param key the key all of the items were submitted with; null for items submitted without a key
+         * @param batch the items, in the order they were submitted
+         * @throws Exception if the batch fails
+         */
+        @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+        void perform(K key, List<T> batch) throws Exception;
+    }
+
+    /**
+     * Creates a batcher that runs each batch of {@link Task}s as a {@link Task#sequence(java.util.Collection) sequence}.
+     *
+     * @param maxBatchSize the number of tasks at which a batch is dispatched immediately
+     * @param maxDelay how long the first task in a batch may wait for others to join it
+     * @param unit the unit of maxDelay
+     * @param executor runs the batches
+     * @return a batcher for tasks
+     */
+    public static Batcher<Object, Task> forTasks(
+            final int maxBatchSize,
+            final long maxDelay,
+            final TimeUnit unit,
+            final Executor executor
+    ) {
+        return new Batcher<>((key, tasks) -> Task.sequence(tasks).perform(), maxBatchSize, maxDelay, unit, executor);
+    }
+
+    private final Handler<K, T> handler;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+
+    private final Object lock = new Object();
+    private final Map<K, Batch> pending = new HashMap<>();
+    private boolean closed = false;
+
+    /**
+     * @param handler does the work for each batch
+     * @param maxBatchSize the number of items at which a batch is dispatched immediately
+     * @param maxDelay how long the first item in a batch may wait for others to join it
+     * @param unit the unit of maxDelay
+     * @param executor runs the batches
+     */
+    public Batcher(
+            final Handler<K, T> handler,
+            final int maxBatchSize,
+            final long maxDelay,
+            final TimeUnit unit,
+            final Executor executor
+    ) {
+        this(handler, maxBatchSize, maxDelay, unit, executor, newScheduler(), true);
+    }
+
+    /**
+     * @param handler does the work for each batch
+     * @param maxBatchSize the number of items at which a batch is dispatched immediately
+     * @param maxDelay how long the first item in a batch may wait for others to join it
+     * @param unit the unit of maxDelay
+     * @param executor runs the batches
+     * @param scheduler used to dispatch batches that have waited for maxDelay; it is not shut down by {@link #close()}
+     */
+    public Batcher(
+            final Handler<K, T> handler,
+            final int maxBatchSize,
+            final long maxDelay,
+            final TimeUnit unit,
+            final Executor executor,
+            final ScheduledExecutorService scheduler
+    ) {
+        this(handler, maxBatchSize, maxDelay, unit, executor, scheduler, false);
+    }
+
+    private Batcher(
+            final Handler<K, T> handler,
+            final int maxBatchSize,
+            final long maxDelay,
+            final TimeUnit unit,
+            final Executor executor,
+            final ScheduledExecutorService scheduler,
+            final boolean ownsScheduler
+    ) {
+        if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be at least 1; was " + maxBatchSize);
+        if (maxDelay < 0) throw new IllegalArgumentException("maxDelay must not be negative; was " + maxDelay);
+        this.handler = requireNonNull(handler);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.executor = requireNonNull(executor);
+        this.scheduler = requireNonNull(scheduler);
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * @param item the item to add to the next batch of items submitted without a key
+     * @return a future that completes when the batch containing the item has been handled
+     * @throws IllegalStateException if this batcher has been closed
+     */
+    public Future<Void> submit(final T item) {
+        return submit(null, item);
+    }
+
+    /**
+     * @param key the key to batch the item with
+     * @param item the item to add to the next batch for the key
+     * @return a future that completes when the batch containing the item has been handled
+     * @throws IllegalStateException if this batcher has been closed
+     * @throws java.util.concurrent.RejectedExecutionException if the item would start a new batch and the scheduler
+     *                                                         cannot schedule its dispatch; the item is not submitted
+     */
+    public Future<Void> submit(final K key, final T item) {
+        final SettableFuture<Void> result = SettableFuture.create();
+        Batch full = null;
+        synchronized (lock) {
+            if (closed) throw new IllegalStateException("Batcher has been closed");
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch(key);
+                // scheduled before it is pending, so a rejected timer leaves no batch that could never be dispatched
+                batch.timer = scheduler.schedule(batch::dispatchIfPending, maxDelayNanos, NANOSECONDS);
+                pending.put(key, batch);
+            }
+            batch.add(item, result);
+            if (batch.items.size() >= maxBatchSize) {
+                pending.remove(key);
+                batch.timer.cancel(false);
+                full = batch;
+            }
+        }
+        if (full != null) full.dispatch();
+        return result;
+    }
+
+    /**
+     * Dispatches all pending batches immediately, without waiting for them to fill or for their delay to elapse.
+     */
+    public void flush() {
+        final List<Batch> toDispatch;
+        synchronized (lock) {
+            toDispatch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (final Batch batch : toDispatch) {
+            batch.timer.cancel(false);
+            batch.dispatch();
+        }
+    }
+
+    /**
+     * Dispatches all pending batches and rejects any further submissions. Does not wait for dispatched batches to complete.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "batcher-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private class Batch {
+
+        private final K key;
+        private final List<T> items = new ArrayList<>();
+        private final List<SettableFuture<Void>> results = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+
+        Batch(final K key) {
+            this.key = key;
+        }
+
+        void add(final T item, final SettableFuture<Void> result) {
+            items.add(item);
+            results.add(result);
+        }
+
+        void dispatchIfPending() {
+            synchronized (lock) {
+                if (pending.get(key) != this) return;
+                pending.remove(key);
+            }
+            dispatch();
+        }
+
+        void dispatch() {
+            try {
+                executor.execute(this::perform);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void perform() {
+            try {
+                handler.perform(key, items);
+            } catch (Exception | Error e) {
+                fail(e);
+                return;
+            }
+            results.forEach(result -> result.set(null));
+        }
+
+        private void fail(final Throwable failure) {
+            results.forEach(result -> result.setException(failure));
+        }
+    }
+}
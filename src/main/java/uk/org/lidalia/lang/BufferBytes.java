@@ -0,0 +1,70 @@
+package uk.org.lidalia.lang;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+
+/**
+ * {@link Bytes} backed by a read only {@link ByteBuffer}, typically direct or mapped from a file.
+ */
+final class BufferBytes extends Bytes {
+
+    /**
+     * Big endian, positioned at 0 with its limit after the last byte; never moved, only read by absolute index or through
+     * duplicates.
+     */
+    private final ByteBuffer buffer;
+
+    BufferBytes(final ByteBuffer buffer) {
+        this.buffer = buffer.order(BIG_ENDIAN);
+    }
+
+    @Override
+    public int size() {
+        return buffer.limit();
+    }
+
+    @Override
+    byte at(final int index) {
+        return buffer.get(index);
+    }
+
+    @Override
+    short shortAt(final int index, final ByteOrder order) {
+        final short bigEndian = buffer.getShort(index);
+        return order == BIG_ENDIAN ? bigEndian : Short.reverseBytes(bigEndian);
+    }
+
+    @Override
+    int intAt(final int index, final ByteOrder order) {
+        final int bigEndian = buffer.getInt(index);
+        return order == BIG_ENDIAN ? bigEndian : Integer.reverseBytes(bigEndian);
+    }
+
+    @Override
+    long longAt(final int index, final ByteOrder order) {
+        final long bigEndian = buffer.getLong(index);
+        return order == BIG_ENDIAN ? bigEndian : Long.reverseBytes(bigEndian);
+    }
+
+    @Override
+    Bytes sliceOf(final int fromIndex, final int toIndex) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(toIndex);
+        slice.position(fromIndex);
+        return new BufferBytes(slice.slice());
+    }
+
+    @Override
+    List<ByteBuffer> chunks() {
+        return Collections.singletonList(buffer.duplicate());
+    }
+
+    @Override
+    public ByteBuffer asReadOnlyByteBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+}
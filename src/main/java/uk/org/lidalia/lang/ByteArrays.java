@@ -0,0 +1,255 @@
+package uk.org.lidalia.lang;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+
+import sun.misc.Unsafe;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Reads multi-byte values out of byte arrays, a whole long at a time where {@link sun.misc.Unsafe} is available on a
+ * little endian 64 bit platform, and a byte at a time otherwise; and scans arrays and buffers a long at a time.
+ *
+ * Indexes are not checked; callers must ensure that every byte read is within the array or buffer.
+ */
+final class ByteArrays {
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final LittleEndianReader READER = chooseReader();
+
+    private static LittleEndianReader chooseReader() {
+        try {
+            if ("64".equals(System.getProperty("sun.arch.data.model")) && ByteOrder.nativeOrder() == LITTLE_ENDIAN) {
+                return new UnsafeReader();
+            }
+        } catch (Throwable unsafeFailure) {
+            // catch absolutely everything and fall through to the pure Java reader
+        }
+        return new PureJavaReader();
+    }
+
+    static short getShort(final byte[] array, final int index, final ByteOrder order) {
+        final short value = (short) ((array[index] & 0xFF) | (array[index + 1] << 8));
+        return order == LITTLE_ENDIAN ? value : Short.reverseBytes(value);
+    }
+
+    static int getInt(final byte[] array, final int index, final ByteOrder order) {
+        final int value = READER.getInt(array, index);
+        return order == LITTLE_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    static long getLong(final byte[] array, final int index, final ByteOrder order) {
+        final long value = READER.getLong(array, index);
+        return order == LITTLE_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    /**
+     * @return the index of the first byte, counting from each offset, at which the arrays differ within length bytes, or
+     *         -1 if they do not; compared a long at a time
+     */
+    static int mismatch(final byte[] a, final int aOffset, final byte[] b, final int bOffset, final int length) {
+        int i = 0;
+        for (; i <= length - Long.BYTES; i += Long.BYTES) {
+            final long difference = READER.getLong(a, aOffset + i) ^ READER.getLong(b, bOffset + i);
+            if (difference != 0) return i + (Long.numberOfTrailingZeros(difference) >>> 3);
+        }
+        for (; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first occurrence of b between from, inclusive, and to, exclusive, or -1; scanned a long at
+     *         a time
+     */
+    static int indexOf(final byte[] array, final int from, final int to, final byte b) {
+        final long pattern = broadcast(b);
+        int i = from;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            final long matches = zeroBytes(READER.getLong(array, i) ^ pattern);
+            if (matches != 0) return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+        }
+        for (; i < to; i++) {
+            if (array[i] == b) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the last occurrence of b between from, inclusive, and to, exclusive, or -1; scanned a long at
+     *         a time
+     */
+    static int lastIndexOf(final byte[] array, final int from, final int to, final byte b) {
+        final long pattern = broadcast(b);
+        int i = to;
+        for (; i - Long.BYTES >= from; i -= Long.BYTES) {
+            final long matches = zeroBytes(READER.getLong(array, i - Long.BYTES) ^ pattern);
+            if (matches != 0) return i - 1 - (Long.numberOfLeadingZeros(matches) >>> 3);
+        }
+        for (i--; i >= from; i--) {
+            if (array[i] == b) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first occurrence of b between from, inclusive, and to, exclusive, or -1; scanned a long at
+     *         a time
+     */
+    static int indexOf(final ByteBuffer buffer, final int from, final int to, final byte b) {
+        final long pattern = broadcast(b);
+        int i = from;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            final long matches = zeroBytes(littleEndianLong(buffer, i) ^ pattern);
+            if (matches != 0) return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the last occurrence of b between from, inclusive, and to, exclusive, or -1; scanned a long at
+     *         a time
+     */
+    static int lastIndexOf(final ByteBuffer buffer, final int from, final int to, final byte b) {
+        final long pattern = broadcast(b);
+        int i = to;
+        for (; i - Long.BYTES >= from; i -= Long.BYTES) {
+            final long matches = zeroBytes(littleEndianLong(buffer, i - Long.BYTES) ^ pattern);
+            if (matches != 0) return i - 1 - (Long.numberOfLeadingZeros(matches) >>> 3);
+        }
+        for (i--; i >= from; i--) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first byte between from, inclusive, and to, exclusive, that is not ASCII - that is, has its
+     *         high bit set - or -1; scanned a long at a time
+     */
+    static int indexOfNonAscii(final byte[] array, final int from, final int to) {
+        int i = from;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            final long highBits = READER.getLong(array, i) & HIGH_BITS;
+            if (highBits != 0) return i + (Long.numberOfTrailingZeros(highBits) >>> 3);
+        }
+        for (; i < to; i++) {
+            if (array[i] < 0) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first byte between from, inclusive, and to, exclusive, that is not ASCII - that is, has its
+     *         high bit set - or -1; scanned a long at a time
+     */
+    static int indexOfNonAscii(final ByteBuffer buffer, final int from, final int to) {
+        int i = from;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            final long highBits = littleEndianLong(buffer, i) & HIGH_BITS;
+            if (highBits != 0) return i + (Long.numberOfTrailingZeros(highBits) >>> 3);
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) < 0) return i;
+        }
+        return -1;
+    }
+
+    private static long littleEndianLong(final ByteBuffer buffer, final int index) {
+        final long value = buffer.getLong(index);
+        return buffer.order() == LITTLE_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    private static long broadcast(final byte b) {
+        return (b & 0xFFL) * 0x0101010101010101L;
+    }
+
+    /**
+     * @return a long with the high bit set in exactly those bytes of word that are zero
+     */
+    private static long zeroBytes(final long word) {
+        final long low7Bits = 0x7F7F7F7F7F7F7F7FL;
+        return ~((word & low7Bits) + low7Bits | word | low7Bits);
+    }
+
+    private abstract static class LittleEndianReader {
+        abstract int getInt(byte[] array, int index);
+        abstract long getLong(byte[] array, int index);
+    }
+
+    private static final class PureJavaReader extends LittleEndianReader {
+
+        @Override
+        int getInt(final byte[] array, final int index) {
+            return (array[index] & 0xFF)
+                    | (array[index + 1] & 0xFF) << 8
+                    | (array[index + 2] & 0xFF) << 16
+                    | array[index + 3] << 24;
+        }
+
+        @Override
+        long getLong(final byte[] array, final int index) {
+            return (getInt(array, index) & 0xFFFFFFFFL) | (long) getInt(array, index + 4) << 32;
+        }
+    }
+
+    /**
+     * Static initialization of this class will fail if the {@link sun.misc.Unsafe} object cannot be accessed.
+     */
+    private static final class UnsafeReader extends LittleEndianReader {
+
+        private static final Unsafe UNSAFE = unsafe();
+        private static final long BYTE_ARRAY_BASE_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+
+        static {
+            if (UNSAFE.arrayIndexScale(byte[].class) != 1) {
+                throw new AssertionError("byte[] elements are not one byte apart");
+            }
+        }
+
+        private static Unsafe unsafe() {
+            try {
+                return Unsafe.getUnsafe();
+            } catch (SecurityException tryReflectionInstead) {
+                try {
+                    return AccessController.doPrivileged((PrivilegedExceptionAction<Unsafe>) () -> {
+                        for (Field field : Unsafe.class.getDeclaredFields()) {
+                            field.setAccessible(true);
+                            final Object value = field.get(null);
+                            if (Unsafe.class.isInstance(value)) {
+                                return Unsafe.class.cast(value);
+                            }
+                        }
+                        throw new NoSuchFieldError("the Unsafe");
+                    });
+                } catch (PrivilegedActionException e) {
+                    throw new RuntimeException("Could not initialize intrinsics", e.getCause());
+                }
+            }
+        }
+
+        @Override
+        int getInt(final byte[] array, final int index) {
+            return UNSAFE.getInt(array, BYTE_ARRAY_BASE_OFFSET + index);
+        }
+
+        @Override
+        long getLong(final byte[] array, final int index) {
+            return UNSAFE.getLong(array, BYTE_ARRAY_BASE_OFFSET + index);
+        }
+    }
+
+    private ByteArrays() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+}
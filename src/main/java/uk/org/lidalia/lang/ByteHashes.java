@@ -0,0 +1,246 @@
+package uk.org.lidalia.lang;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.Checksum;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Non-cryptographic hashes and checksums of {@link Bytes}, computed in place over whatever storage backs them.
+ */
+final class ByteHashes {
+
+    private static final long XXH_PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long XXH_PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long XXH_PRIME_3 = 0x165667B19E3779F9L;
+    private static final long XXH_PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long XXH_PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final long MURMUR_C1 = 0x87C37B91114253D5L;
+    private static final long MURMUR_C2 = 0x4CF5AD432745937FL;
+
+    /**
+     * XXH64, as specified at https://github.com/Cyan4973/xxHash.
+     */
+    static long xxHash64(final Bytes bytes, final long seed) {
+        final int length = bytes.size();
+        int i = 0;
+        long hash;
+        if (length >= 32) {
+            long v1 = seed + XXH_PRIME_1 + XXH_PRIME_2;
+            long v2 = seed + XXH_PRIME_2;
+            long v3 = seed;
+            long v4 = seed - XXH_PRIME_1;
+            for (; i <= length - 32; i += 32) {
+                v1 = xxRound(v1, bytes.longAt(i, LITTLE_ENDIAN));
+                v2 = xxRound(v2, bytes.longAt(i + 8, LITTLE_ENDIAN));
+                v3 = xxRound(v3, bytes.longAt(i + 16, LITTLE_ENDIAN));
+                v4 = xxRound(v4, bytes.longAt(i + 24, LITTLE_ENDIAN));
+            }
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = xxMerge(hash, v1);
+            hash = xxMerge(hash, v2);
+            hash = xxMerge(hash, v3);
+            hash = xxMerge(hash, v4);
+        } else {
+            hash = seed + XXH_PRIME_5;
+        }
+        hash += length;
+        for (; i <= length - 8; i += 8) {
+            hash ^= xxRound(0, bytes.longAt(i, LITTLE_ENDIAN));
+            hash = Long.rotateLeft(hash, 27) * XXH_PRIME_1 + XXH_PRIME_4;
+        }
+        if (i <= length - 4) {
+            hash ^= (bytes.intAt(i, LITTLE_ENDIAN) & 0xFFFFFFFFL) * XXH_PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * XXH_PRIME_2 + XXH_PRIME_3;
+            i += 4;
+        }
+        for (; i < length; i++) {
+            hash ^= (bytes.at(i) & 0xFFL) * XXH_PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * XXH_PRIME_1;
+        }
+        hash ^= hash >>> 33;
+        hash *= XXH_PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= XXH_PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long xxRound(final long accumulator, final long input) {
+        return Long.rotateLeft(accumulator + input * XXH_PRIME_2, 31) * XXH_PRIME_1;
+    }
+
+    private static long xxMerge(final long hash, final long accumulator) {
+        return (hash ^ xxRound(0, accumulator)) * XXH_PRIME_1 + XXH_PRIME_4;
+    }
+
+    /**
+     * MurmurHash3_x64_128, as specified at https://github.com/aappleby/smhasher, giving the same result as Guava's
+     * Hashing.murmur3_128 for every seed, and as the reference implementation for non negative seeds.
+     *
+     * @return the 16 byte hash, h1 then h2, each little endian
+     */
+    static Bytes murmur3Hash128(final Bytes bytes, final int seed) {
+        final int length = bytes.size();
+        // sign extended, as Guava does, rather than zero extended as the reference implementation's uint32_t seed is
+        long h1 = seed;
+        long h2 = seed;
+        int i = 0;
+        for (; i <= length - 16; i += 16) {
+            h1 ^= murmurMixK1(bytes.longAt(i, LITTLE_ENDIAN));
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52DCE729;
+            h2 ^= murmurMixK2(bytes.longAt(i + 8, LITTLE_ENDIAN));
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        for (int j = 0; i + j < length; j++) {
+            final long b = bytes.at(i + j) & 0xFFL;
+            if (j < 8) {
+                k1 ^= b << (8 * j);
+            } else {
+                k2 ^= b << (8 * (j - 8));
+            }
+        }
+        h1 ^= murmurMixK1(k1);
+        h2 ^= murmurMixK2(k2);
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = murmurFinalMix(h1);
+        h2 = murmurFinalMix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        final ByteBuffer hash = ByteBuffer.allocate(16).order(LITTLE_ENDIAN);
+        hash.putLong(h1).putLong(h2);
+        return Bytes.wrap(hash.array());
+    }
+
+    private static long murmurMixK1(final long k1) {
+        return Long.rotateLeft(k1 * MURMUR_C1, 31) * MURMUR_C2;
+    }
+
+    private static long murmurMixK2(final long k2) {
+        return Long.rotateLeft(k2 * MURMUR_C2, 33) * MURMUR_C1;
+    }
+
+    private static long murmurFinalMix(final long k) {
+        long mixed = k;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xFF51AFD7ED558CCDL;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xC4CEB9FE1A85EC53L;
+        mixed ^= mixed >>> 33;
+        return mixed;
+    }
+
+    private static final Crc32c CRC32C = chooseCrc32c();
+
+    private static Crc32c chooseCrc32c() {
+        try {
+            return new JdkCrc32c();
+        } catch (Throwable jdkCrc32cFailure) {
+            // java.util.zip.CRC32C, which is intrinsified on most platforms, arrived in Java 9
+            return new TableCrc32c();
+        }
+    }
+
+    /**
+     * CRC-32C (Castagnoli), as used by iSCSI, ext4 and many storage formats.
+     */
+    static long crc32c(final Bytes bytes) {
+        return CRC32C.checksum(bytes.storage());
+    }
+
+    private abstract static class Crc32c {
+        abstract long checksum(List<ByteBuffer> chunks);
+    }
+
+    /**
+     * Static initialization of this class will fail if java.util.zip.CRC32C is not available.
+     */
+    private static final class JdkCrc32c extends Crc32c {
+
+        private static final MethodHandle CONSTRUCTOR;
+        private static final MethodHandle UPDATE_BUFFER;
+
+        static {
+            try {
+                final Class<?> type = Class.forName("java.util.zip.CRC32C");
+                final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                CONSTRUCTOR = lookup.findConstructor(type, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Checksum.class));
+                UPDATE_BUFFER = lookup.findVirtual(Checksum.class, "update",
+                        MethodType.methodType(void.class, ByteBuffer.class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("PMD.AvoidCatchingThrowable")
+        long checksum(final List<ByteBuffer> chunks) {
+            try {
+                final Checksum checksum = (Checksum) CONSTRUCTOR.invokeExact();
+                for (ByteBuffer chunk : chunks) {
+                    if (chunk.hasArray()) {
+                        checksum.update(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                    } else {
+                        UPDATE_BUFFER.invokeExact(checksum, chunk);
+                    }
+                }
+                return checksum.getValue();
+            } catch (Throwable t) {
+                return Exceptions.throwUnchecked(t, 0L);
+            }
+        }
+    }
+
+    private static final class TableCrc32c extends Crc32c {
+
+        private static final int[] TABLE = new int[256];
+
+        static {
+            for (int i = 0; i < TABLE.length; i++) {
+                int crc = i;
+                for (int bit = 0; bit < 8; bit++) {
+                    crc = (crc & 1) != 0 ? crc >>> 1 ^ 0x82F63B78 : crc >>> 1;
+                }
+                TABLE[i] = crc;
+            }
+        }
+
+        @Override
+        long checksum(final List<ByteBuffer> chunks) {
+            int crc = ~0;
+            for (ByteBuffer chunk : chunks) {
+                if (chunk.hasArray()) {
+                    final byte[] array = chunk.array();
+                    final int end = chunk.arrayOffset() + chunk.limit();
+                    for (int i = chunk.arrayOffset() + chunk.position(); i < end; i++) {
+                        crc = TABLE[(crc ^ array[i]) & 0xFF] ^ crc >>> 8;
+                    }
+                } else {
+                    for (int i = chunk.position(); i < chunk.limit(); i++) {
+                        crc = TABLE[(crc ^ chunk.get(i)) & 0xFF] ^ crc >>> 8;
+                    }
+                }
+            }
+            return ~crc & 0xFFFFFFFFL;
+        }
+    }
+
+    private ByteHashes() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+}
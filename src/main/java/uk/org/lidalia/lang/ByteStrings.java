@@ -0,0 +1,157 @@
+package uk.org.lidalia.lang;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Decoding and validation of text in {@link Bytes}, skipping runs of ASCII a long at a time rather than passing every
+ * byte through a {@link java.nio.charset.CharsetDecoder}.
+ */
+final class ByteStrings {
+
+    private static final int DECODE_BUFFER_SIZE = 1024;
+
+    private static final ThreadLocal<Decoding> DECODING = new ThreadLocal<>(Decoding::new);
+
+    /**
+     * @return true if every byte decodes to the char with the same value in charset, as is the case for ISO-8859-1, and for
+     *         ASCII and UTF-8 if the bytes are all ASCII
+     */
+    static boolean decodesAsLatin1(final Bytes bytes, final Charset charset) {
+        return charset.equals(ISO_8859_1) || (charset.equals(UTF_8) || charset.equals(US_ASCII)) && bytes.isAscii();
+    }
+
+    /**
+     * Widens each byte straight to a char where {@link #decodesAsLatin1} would hold, rather than decoding it.
+     */
+    static String string(final byte[] bytes, final int offset, final int length, final Charset charset) {
+        if (charset.equals(ISO_8859_1) || (charset.equals(UTF_8) || charset.equals(US_ASCII))
+                && ByteArrays.indexOfNonAscii(bytes, offset, offset + length) < 0) {
+            return latin1String(bytes, offset, length);
+        }
+        return new String(bytes, offset, length, charset);
+    }
+
+    /**
+     * @return a String of the bytes each widened straight to a char
+     */
+    @SuppressWarnings("deprecation")
+    static String latin1String(final byte[] bytes, final int offset, final int length) {
+        return new String(bytes, 0, offset, length);
+    }
+
+    /**
+     * @return a decoder for charset that replaces malformed and unmappable input, reset and reused by the calling
+     *         {@link Thread}
+     */
+    static CharsetDecoder decoder(final Charset charset) {
+        return DECODING.get().decoder(charset);
+    }
+
+    /**
+     * Decodes through the calling {@link Thread}'s decoder and char buffer onto the end of destination, allocating
+     * nothing beyond any growth of destination.
+     */
+    static void decode(final ByteBuffer bytes, final Charset charset, final StringBuilder destination) {
+        final Decoding decoding = DECODING.get();
+        final CharsetDecoder decoder = decoding.decoder(charset);
+        final CharBuffer chars = decoding.chars;
+        destination.ensureCapacity(destination.length() + (int) (bytes.remaining() * decoder.averageCharsPerByte()));
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, true);
+            drain(chars, destination);
+        } while (result.isOverflow());
+        do {
+            result = decoder.flush(chars);
+            drain(chars, destination);
+        } while (result.isOverflow());
+    }
+
+    private static void drain(final CharBuffer chars, final StringBuilder destination) {
+        destination.append(chars.array(), chars.arrayOffset(), chars.position());
+        chars.clear();
+    }
+
+    /**
+     * @return the index within chunk of its first byte at or after from that is not ASCII, or -1
+     */
+    static int indexOfNonAscii(final ByteBuffer chunk, final int from) {
+        if (!chunk.hasArray()) return ByteArrays.indexOfNonAscii(chunk, from, chunk.limit());
+        final int offset = chunk.arrayOffset();
+        final int found = ByteArrays.indexOfNonAscii(chunk.array(), offset + from, offset + chunk.limit());
+        return found >= 0 ? found - offset : -1;
+    }
+
+    /**
+     * Checks the chunks are well formed UTF-8 as defined by RFC 3629 - no overlong encodings, surrogates or code points
+     * above U+10FFFF - allocating nothing. Sequences may span chunks.
+     */
+    static boolean isValidUtf8(final List<ByteBuffer> chunks) {
+        int continuations = 0;
+        int lower = 0x80;
+        int upper = 0xBF;
+        for (ByteBuffer chunk : chunks) {
+            final int end = chunk.limit();
+            int i = chunk.position();
+            while (i < end) {
+                if (continuations == 0) {
+                    i = indexOfNonAscii(chunk, i);
+                    if (i < 0) break;
+                    final int lead = chunk.get(i++) & 0xFF;
+                    if (lead >= 0xC2 && lead <= 0xDF) {
+                        continuations = 1;
+                    } else if (lead >= 0xE0 && lead <= 0xEF) {
+                        continuations = 2;
+                        lower = lead == 0xE0 ? 0xA0 : 0x80;
+                        upper = lead == 0xED ? 0x9F : 0xBF;
+                    } else if (lead >= 0xF0 && lead <= 0xF4) {
+                        continuations = 3;
+                        lower = lead == 0xF0 ? 0x90 : 0x80;
+                        upper = lead == 0xF4 ? 0x8F : 0xBF;
+                    } else {
+                        return false;
+                    }
+                } else {
+                    final int continuation = chunk.get(i++) & 0xFF;
+                    if (continuation < lower || continuation > upper) return false;
+                    lower = 0x80;
+                    upper = 0xBF;
+                    continuations--;
+                }
+            }
+        }
+        return continuations == 0;
+    }
+
+    private ByteStrings() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+
+    /**
+     * The decoder last used by a {@link Thread}, kept for as long as it goes on decoding the same charset.
+     */
+    private static final class Decoding {
+
+        private final CharBuffer chars = CharBuffer.allocate(DECODE_BUFFER_SIZE);
+        private CharsetDecoder decoder;
+
+        CharsetDecoder decoder(final Charset charset) {
+            if (decoder == null || !decoder.charset().equals(charset)) {
+                decoder = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            return decoder.reset();
+        }
+    }
+}
@@ -4,79 +4,971 @@ import uk.org.lidalia.lang.encoding.Encoded;
 import uk.org.lidalia.lang.encoding.Encoder;
 import uk.org.lidalia.lang.encoding.base64.Base64;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
 import static uk.org.lidalia.lang.encoding.base64.Base64Encoder.base64;
 
-public class Bytes extends AbstractList<Byte> {
+/**
+ * An immutable sequence of bytes.
+ *
+ * {@link #of(byte[])} copies the array it is given; {@link #wrap(byte[])} takes ownership of it instead, and
+ * {@link #slice(int, int)} and {@link #subList(int, int)} share the storage of the Bytes they are taken from, so a
+ * payload can be passed through many layers as Bytes without ever being copied.
+ *
+ * Bytes need not be on the heap: {@link #map(Path)} maps a file into memory and {@link #offHeapCopy()} copies bytes into
+ * direct memory, and both behave exactly like Bytes backed by an array. {@link #concat(Bytes...)} and
+ * {@link BytesBuilder} link Bytes together without copying them.
+ *
+ * Bytes are ordered lexicographically, comparing each byte as an unsigned value.
+ */
+public abstract class Bytes extends AbstractList<Byte> implements Comparable<Bytes> {
+
+    static final Bytes EMPTY = new HeapBytes(new byte[0], 0, 0);
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
 
     public static Bytes of(byte[] bytes) {
-        return new Bytes(bytes);
+        return wrap(Arrays.copyOf(bytes, bytes.length));
     }
 
     public static Bytes of(String text, Charset charset) {
-        return of(text.getBytes(charset));
+        return wrap(text.getBytes(charset));
     }
 
     public static Bytes of(String text) {
         return of(text, UTF_8);
     }
 
-    private final byte[] bytes;
+    /**
+     * @param buffer the buffer to copy the remaining bytes of, which may be direct; its position is not changed
+     * @return a copy of the bytes between the buffer's position and its limit
+     */
+    public static Bytes of(ByteBuffer buffer) {
+        final byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return wrap(copy);
+    }
+
+    /**
+     * @param channel a blocking channel to read from until end of stream; it is not closed
+     * @return the bytes read
+     * @throws IOException if reading from the channel fails
+     */
+    public static Bytes readFrom(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(initialCapacity(channel));
+        while (channel.read(buffer) >= 0) {
+            if (!buffer.hasRemaining()) {
+                final ByteBuffer larger = ByteBuffer.allocate(grow(buffer.capacity()));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        return wrap(buffer.array(), 0, buffer.position());
+    }
+
+    private static int initialCapacity(ReadableByteChannel channel) throws IOException {
+        if (channel instanceof SeekableByteChannel) {
+            final SeekableByteChannel seekable = (SeekableByteChannel) channel;
+            final long remaining = seekable.size() - seekable.position();
+            // one spare byte, so that end of stream is seen without growing the buffer
+            return (int) Math.min(Math.max(remaining + 1, 1), MAX_ARRAY_SIZE);
+        }
+        return TRANSFER_BUFFER_SIZE;
+    }
+
+    private static int grow(int capacity) {
+        if (capacity == MAX_ARRAY_SIZE) throw new OutOfMemoryError("Too many bytes to hold in an array");
+        return (int) Math.min((long) capacity * 2, MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * @param in the stream to read from until it ends, in chunks; it is not closed
+     * @return the bytes read
+     * @throws IOException if reading from the stream fails
+     * @see BytesBuilder#readFrom(InputStream)
+     */
+    public static Bytes readFrom(InputStream in) throws IOException {
+        return new BytesBuilder().readFrom(in).build();
+    }
+
+    /**
+     * @param parts the bytes to concatenate
+     * @return the parts one after another, linked together rather than copied unless they are small
+     * @throws IllegalArgumentException if the parts have more than {@link Integer#MAX_VALUE} bytes between them
+     * @see BytesBuilder
+     */
+    public static Bytes concat(Bytes... parts) {
+        return concat(Arrays.asList(parts));
+    }
+
+    /**
+     * Takes time proportional to the total number of parts linked, including those of any earlier concatenation among
+     * the parts, so building up Bytes by repeatedly concatenating onto the result takes time quadratic in the number of
+     * pieces; use a {@link BytesBuilder} for that.
+     *
+     * @param parts the bytes to concatenate
+     * @return the parts one after another, linked together rather than copied unless they are small
+     * @throws IllegalArgumentException if the parts have more than {@link Integer#MAX_VALUE} bytes between them
+     * @see BytesBuilder
+     */
+    public static Bytes concat(List<? extends Bytes> parts) {
+        return RopeBytes.of(parts);
+    }
+
+    /**
+     * @param bytes an array that will never be modified again; it is not copied
+     * @return Bytes backed by the array
+     */
+    public static Bytes wrap(byte[] bytes) {
+        return wrap(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes an array whose given range will never be modified again; it is not copied
+     * @param offset the index in the array of the first byte
+     * @param length the number of bytes
+     * @return Bytes backed by the range of the array
+     * @throws IndexOutOfBoundsException if the range is not within the array
+     */
+    public static Bytes wrap(byte[] bytes, int offset, int length) {
+        checkRange(offset, length, bytes.length);
+        return length == 0 ? EMPTY : new HeapBytes(bytes, offset, length);
+    }
+
+    /**
+     * @param buffer a buffer, heap or direct, whose remaining bytes will never be modified again; they are not copied,
+     *               and the buffer's position is not changed
+     * @return Bytes backed by the bytes between the buffer's position and its limit
+     */
+    public static Bytes wrap(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) return EMPTY;
+        if (buffer.hasArray()) return wrap(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        return new BufferBytes(buffer.slice().asReadOnlyBuffer());
+    }
+
+    /**
+     * @param file the file to map into memory; it should not be modified while the Bytes are in use
+     * @return Bytes backed by the contents of the file, which are paged in by the operating system as they are read
+     * @throws IOException if the file cannot be mapped
+     * @throws IllegalArgumentException if the file is larger than {@link Integer#MAX_VALUE} bytes; use
+     *                                  {@link #map(Path, long, int)} to map a region of it
+     */
+    public static Bytes map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(file + " is " + size + " bytes; map a region of at most "
+                        + Integer.MAX_VALUE + " bytes instead");
+            }
+            return map(channel, 0, (int) size);
+        }
+    }
+
+    /**
+     * @param file the file to map into memory; it should not be modified while the Bytes are in use
+     * @param position the position in the file of the first byte to map
+     * @param size the number of bytes to map
+     * @return Bytes backed by the region of the file, which is paged in by the operating system as it is read
+     * @throws IOException if the file cannot be mapped
+     * @throws IllegalArgumentException if the region is not within the file
+     */
+    public static Bytes map(Path file, long position, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (position < 0 || size < 0 || position > channel.size() - size) {
+                throw new IllegalArgumentException("position: " + position + ", size: " + size
+                        + ", file size: " + channel.size());
+            }
+            return map(channel, position, size);
+        }
+    }
+
+    private static Bytes map(FileChannel channel, long position, int size) throws IOException {
+        return size == 0 ? EMPTY : new BufferBytes(channel.map(READ_ONLY, position, size));
+    }
+
+    /**
+     * Cached by {@link #hashCode()}; 0 until first computed.
+     */
+    private int hash;
+
+    Bytes() {
+    }
+
+    /**
+     * @param index an index known to be between 0 and {@link #size()}, exclusive
+     * @return the byte at that index
+     */
+    abstract byte at(int index);
+
+    /**
+     * @param fromIndex an index known to be between 0 and toIndex
+     * @param toIndex an index known to be no greater than {@link #size()}, and greater than fromIndex
+     * @return the bytes between the indexes, sharing storage with these bytes
+     */
+    abstract Bytes sliceOf(int fromIndex, int toIndex);
+
+    /**
+     * @return the bytes as a sequence of read only buffers, each a fresh view positioned at its first byte, which may be
+     *         passed to code outside this package
+     */
+    abstract List<ByteBuffer> chunks();
+
+    /**
+     * @return the bytes as {@link #chunks()}, except that the views are writable where the storage is, so that their
+     *         backing arrays can be read directly; never to be passed to code outside this package or the JDK
+     */
+    List<ByteBuffer> storage() {
+        return chunks();
+    }
+
+    /**
+     * @param index an index known to be at least 2 bytes before {@link #size()}
+     * @param order the order of the bytes
+     * @return the two bytes from index as a short
+     */
+    short shortAt(int index, ByteOrder order) {
+        final short bigEndian = (short) (at(index) << 8 | at(index + 1) & 0xFF);
+        return order == BIG_ENDIAN ? bigEndian : Short.reverseBytes(bigEndian);
+    }
+
+    /**
+     * @param index an index known to be at least 4 bytes before {@link #size()}
+     * @param order the order of the bytes
+     * @return the four bytes from index as an int
+     */
+    int intAt(int index, ByteOrder order) {
+        int bigEndian = 0;
+        for (int i = index; i < index + Integer.BYTES; i++) {
+            bigEndian = bigEndian << 8 | at(i) & 0xFF;
+        }
+        return order == BIG_ENDIAN ? bigEndian : Integer.reverseBytes(bigEndian);
+    }
+
+    /**
+     * @param index an index known to be at least 8 bytes before {@link #size()}
+     * @param order the order of the bytes
+     * @return the eight bytes from index as a long
+     */
+    long longAt(int index, ByteOrder order) {
+        long bigEndian = 0;
+        for (int i = index; i < index + Long.BYTES; i++) {
+            bigEndian = bigEndian << 8 | at(i) & 0xFF;
+        }
+        return order == BIG_ENDIAN ? bigEndian : Long.reverseBytes(bigEndian);
+    }
+
+    /**
+     * @param index the index of the byte
+     * @return the byte at the index, without boxing it
+     * @throws IndexOutOfBoundsException if index is negative or not less than {@link #size()}
+     */
+    public byte byteAt(int index) {
+        checkIndex(index, 1);
+        return at(index);
+    }
+
+    /**
+     * @param index the index of the byte
+     * @return the byte at the index as a value between 0 and 255
+     * @throws IndexOutOfBoundsException if index is negative or not less than {@link #size()}
+     */
+    public int unsignedByteAt(int index) {
+        return byteAt(index) & 0xFF;
+    }
+
+    /**
+     * @param index the index of the first of two bytes
+     * @param order the order of the bytes
+     * @return the two bytes as a short
+     * @throws IndexOutOfBoundsException if index is negative or fewer than 2 bytes before {@link #size()}
+     */
+    public short getShort(int index, ByteOrder order) {
+        checkIndex(index, Short.BYTES);
+        return shortAt(index, order);
+    }
+
+    /**
+     * @param index the index of the first of four bytes
+     * @param order the order of the bytes
+     * @return the four bytes as an int
+     * @throws IndexOutOfBoundsException if index is negative or fewer than 4 bytes before {@link #size()}
+     */
+    public int getInt(int index, ByteOrder order) {
+        checkIndex(index, Integer.BYTES);
+        return intAt(index, order);
+    }
+
+    /**
+     * @param index the index of the first of eight bytes
+     * @param order the order of the bytes
+     * @return the eight bytes as a long
+     * @throws IndexOutOfBoundsException if index is negative or fewer than 8 bytes before {@link #size()}
+     */
+    public long getLong(int index, ByteOrder order) {
+        checkIndex(index, Long.BYTES);
+        return longAt(index, order);
+    }
+
+    /**
+     * @param action called with each byte in turn, without boxing it
+     */
+    public void forEachByte(ByteConsumer action) {
+        for (ByteBuffer chunk : chunks()) {
+            for (int i = chunk.position(); i < chunk.limit(); i++) {
+                action.accept(chunk.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return the bytes as a stream of ints between -128 and 127, without boxing them
+     */
+    public IntStream intStream() {
+        return chunks().stream().flatMapToInt(chunk -> IntStream.range(chunk.position(), chunk.limit()).map(chunk::get));
+    }
 
-    private Bytes(byte[] bytes) {
-        this.bytes = Arrays.copyOf(bytes, bytes.length);
+    /**
+     * @param b the byte to find
+     * @return the index of the first occurrence of the byte, or -1 if it does not occur
+     */
+    public int indexOf(byte b) {
+        return indexOf(b, 0);
     }
 
+    /**
+     * Scans eight bytes at a time.
+     *
+     * @param b the byte to find
+     * @param fromIndex the index to start searching from
+     * @return the index of the first occurrence of the byte at or after fromIndex, or -1 if it does not occur
+     */
+    public int indexOf(byte b, int fromIndex) {
+        int start = 0;
+        for (ByteBuffer chunk : storage()) {
+            final int length = chunk.remaining();
+            if (fromIndex < start + length) {
+                final int found = indexOf(chunk, chunk.position() + Math.max(fromIndex - start, 0), b);
+                if (found >= 0) return start + found - chunk.position();
+            }
+            start += length;
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer chunk, int from, byte b) {
+        if (!chunk.hasArray()) return ByteArrays.indexOf(chunk, from, chunk.limit(), b);
+        final int offset = chunk.arrayOffset();
+        final int found = ByteArrays.indexOf(chunk.array(), offset + from, offset + chunk.limit(), b);
+        return found >= 0 ? found - offset : -1;
+    }
+
+    /**
+     * Scans eight bytes at a time.
+     *
+     * @param b the byte to find
+     * @return the index of the last occurrence of the byte, or -1 if it does not occur
+     */
+    public int lastIndexOf(byte b) {
+        final List<ByteBuffer> chunks = storage();
+        int end = size();
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            final ByteBuffer chunk = chunks.get(i);
+            end -= chunk.remaining();
+            final int found = lastIndexOf(chunk, b);
+            if (found >= 0) return end + found - chunk.position();
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer chunk, byte b) {
+        if (!chunk.hasArray()) return ByteArrays.lastIndexOf(chunk, chunk.position(), chunk.limit(), b);
+        final int offset = chunk.arrayOffset();
+        final int found = ByteArrays.lastIndexOf(chunk.array(), offset + chunk.position(), offset + chunk.limit(), b);
+        return found >= 0 ? found - offset : -1;
+    }
+
+    /**
+     * @param target the bytes to find
+     * @return the index of the first occurrence of target, or -1 if it does not occur
+     * @see BytesPattern to search for the same bytes repeatedly
+     */
+    public int indexOf(Bytes target) {
+        return indexOf(target, 0);
+    }
+
+    /**
+     * @param target the bytes to find
+     * @param fromIndex the index to start searching from
+     * @return the index of the first occurrence of target at or after fromIndex, or -1 if it does not occur
+     * @see BytesPattern to search for the same bytes repeatedly
+     */
+    public int indexOf(Bytes target, int fromIndex) {
+        return BytesPattern.compile(target).indexIn(this, fromIndex);
+    }
+
+    /**
+     * @param target the bytes to find
+     * @return the index of the last occurrence of target, or -1 if it does not occur
+     * @see BytesPattern to search for the same bytes repeatedly
+     */
+    public int lastIndexOf(Bytes target) {
+        return BytesPattern.compile(target).lastIndexIn(this);
+    }
+
+    /**
+     * @param delimiter the byte to split on
+     * @return the slices of these bytes before, between and after each occurrence of delimiter, including any empty
+     *         ones; sharing storage with these bytes
+     */
+    public List<Bytes> split(byte delimiter) {
+        final List<Bytes> pieces = new ArrayList<>();
+        int start = 0;
+        for (int found = indexOf(delimiter, 0); found >= 0; found = indexOf(delimiter, start)) {
+            pieces.add(slice(start, found));
+            start = found + 1;
+        }
+        pieces.add(slice(start, size()));
+        return pieces;
+    }
+
+    /**
+     * @param delimiter the bytes to split on
+     * @return the slices of these bytes before, between and after each non-overlapping occurrence of delimiter,
+     *         including any empty ones; sharing storage with these bytes
+     * @throws IllegalArgumentException if delimiter is empty
+     * @see BytesPattern to split on the same delimiter repeatedly
+     */
+    public List<Bytes> split(Bytes delimiter) {
+        return BytesPattern.compile(delimiter).split(this);
+    }
+
+    /**
+     * @return a read only view of the bytes, positioned at the first byte, which shares their storage
+     */
+    public abstract ByteBuffer asReadOnlyByteBuffer();
+
+    /**
+     * @return a copy of the bytes, which the caller is free to modify
+     */
     public byte[] array() {
-        return Arrays.copyOf(bytes, bytes.length);
+        final byte[] copy = new byte[size()];
+        copyTo(copy, 0);
+        return copy;
+    }
+
+    /**
+     * @param destination the array to copy the bytes into
+     * @param destinationOffset the index in destination to copy the first byte to
+     * @throws IndexOutOfBoundsException if destination has fewer than {@link #size()} elements from destinationOffset
+     */
+    public void copyTo(byte[] destination, int destinationOffset) {
+        checkRange(destinationOffset, size(), destination.length);
+        int position = destinationOffset;
+        for (ByteBuffer chunk : chunks()) {
+            final int length = chunk.remaining();
+            chunk.get(destination, position, length);
+            position += length;
+        }
+    }
+
+    /**
+     * @return these bytes in a single contiguous block of storage, which may be these bytes themselves; Bytes made by
+     *         concatenation are copied into an array the first time this is called
+     */
+    public Bytes flatten() {
+        return this;
+    }
+
+    /**
+     * @return a copy of the bytes in direct memory, outside the Java heap
+     */
+    public Bytes offHeapCopy() {
+        if (isEmpty()) return EMPTY;
+        final ByteBuffer direct = ByteBuffer.allocateDirect(size());
+        for (ByteBuffer chunk : chunks()) {
+            direct.put(chunk);
+        }
+        direct.flip();
+        return new BufferBytes(direct.asReadOnlyBuffer());
+    }
+
+    /**
+     * @param out the stream to write the bytes to, without copying them; it is neither flushed nor closed
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] transfer = null;
+        for (ByteBuffer chunk : storage()) {
+            if (chunk.hasArray()) {
+                out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            } else {
+                if (transfer == null) transfer = new byte[Math.min(TRANSFER_BUFFER_SIZE, size())];
+                while (chunk.hasRemaining()) {
+                    final int length = Math.min(transfer.length, chunk.remaining());
+                    chunk.get(transfer, 0, length);
+                    out.write(transfer, 0, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param channel a blocking channel to write all the bytes to, without copying them; it is not closed
+     * @throws IOException if writing to the channel fails
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        for (ByteBuffer chunk : chunks()) {
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+        }
     }
 
+    /**
+     * @param fromIndex the index of the first byte in the slice, inclusive
+     * @param toIndex the index of the last byte in the slice, exclusive
+     * @return the bytes between the given indexes, sharing storage with these bytes
+     * @throws IndexOutOfBoundsException if fromIndex is negative, toIndex is greater than {@link #size()} or fromIndex
+     *                                   is greater than toIndex
+     */
+    public Bytes slice(int fromIndex, int toIndex) {
+        final int size = size();
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", size: " + size);
+        }
+        if (fromIndex == 0 && toIndex == size) return this;
+        if (fromIndex == toIndex) return EMPTY;
+        return sliceOf(fromIndex, toIndex);
+    }
+
+    /**
+     * ASCII in UTF-8 or US-ASCII, and any ISO-8859-1, is widened straight to chars rather than decoded; anything else is
+     * decoded in place over the storage rather than first copied into an array.
+     *
+     * @param charset the charset to decode with; malformed input is replaced
+     * @return the bytes decoded as a String
+     */
     public String string(Charset charset) {
-        return new String(bytes, charset);
+        if (ByteStrings.decodesAsLatin1(this, charset)) return ByteStrings.latin1String(array(), 0, size());
+        return charset.decode(asReadOnlyByteBuffer()).toString();
     }
 
     public String string() {
         return string(UTF_8);
     }
 
+    /**
+     * Decodes the range without first copying it into a String. ASCII in UTF-8 or US-ASCII, and any ISO-8859-1, is
+     * widened straight to chars rather than decoded.
+     *
+     * @param fromIndex the index of the first byte to decode
+     * @param toIndex the index after the last byte to decode
+     * @param charset the charset to decode with; malformed input is replaced
+     * @param destination the buffer to put the chars into
+     * @return destination
+     * @throws BufferOverflowException if destination has too little room for the chars, in which case its position is
+     *                                 unchanged
+     */
+    public CharBuffer decode(int fromIndex, int toIndex, Charset charset, CharBuffer destination) {
+        final Bytes range = slice(fromIndex, toIndex);
+        if (ByteStrings.decodesAsLatin1(range, charset)) {
+            if (destination.remaining() < range.size()) throw new BufferOverflowException();
+            range.forEachByte(b -> destination.put((char) (b & 0xFF)));
+        } else {
+            final CharsetDecoder decoder = ByteStrings.decoder(charset);
+            final int start = destination.position();
+            CoderResult result = decoder.decode(range.asReadOnlyByteBuffer(), destination, true);
+            if (!result.isOverflow()) result = decoder.flush(destination);
+            if (result.isOverflow()) {
+                destination.position(start);
+                throw new BufferOverflowException();
+            }
+        }
+        return destination;
+    }
+
+    /**
+     * Decodes the range onto the end of destination, without first copying it into a String. ASCII in UTF-8 or US-ASCII,
+     * and any ISO-8859-1, is widened straight to chars rather than decoded.
+     *
+     * @param fromIndex the index of the first byte to decode
+     * @param toIndex the index after the last byte to decode
+     * @param charset the charset to decode with; malformed input is replaced
+     * @param destination the builder to append the chars to
+     * @return destination
+     */
+    public StringBuilder decode(int fromIndex, int toIndex, Charset charset, StringBuilder destination) {
+        final Bytes range = slice(fromIndex, toIndex);
+        if (ByteStrings.decodesAsLatin1(range, charset)) {
+            destination.ensureCapacity(destination.length() + range.size());
+            range.forEachByte(b -> destination.append((char) (b & 0xFF)));
+        } else {
+            ByteStrings.decode(range.asReadOnlyByteBuffer(), charset, destination);
+        }
+        return destination;
+    }
+
+    /**
+     * Scans eight bytes at a time.
+     *
+     * @return true if no byte has its high bit set
+     */
+    public boolean isAscii() {
+        for (ByteBuffer chunk : storage()) {
+            if (ByteStrings.indexOfNonAscii(chunk, chunk.position()) >= 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Allocates nothing, and skips runs of ASCII eight bytes at a time.
+     *
+     * @return true if the bytes are well formed UTF-8: no truncated sequences, overlong encodings, surrogates or code
+     *         points beyond U+10FFFF
+     */
+    public boolean isValidUtf8() {
+        return ByteStrings.isValidUtf8(storage());
+    }
+
     public InputStream inputStream() {
-        return new ByteArrayInputStream(bytes);
+        return new ChunksInputStream(chunks().iterator());
     }
 
     public <T extends Encoded<T>> T encode(Encoder<T> encoder) {
-        return encoder.encode(bytes);
+        return encoder.encode(this);
     }
 
     public Base64 encode() {
         return encode(base64);
     }
 
+    /**
+     * @param compression the format, level and strategy to compress with, such as {@link Compression#GZIP}
+     * @return these bytes compressed
+     */
+    public Bytes compress(Compression compression) {
+        return compression.compress(this);
+    }
+
+    /**
+     * @param compression the format these bytes are compressed in, such as {@link Compression#GZIP}
+     * @return these bytes decompressed
+     * @throws IllegalArgumentException if these bytes are not valid compressed data in that format
+     */
+    public Bytes decompress(Compression compression) {
+        return compression.decompress(this);
+    }
+
+    /**
+     * @return the 64 bit xxHash (XXH64) of the bytes with a seed of 0; a fast non-cryptographic hash
+     */
+    public long xxHash64() {
+        return xxHash64(0);
+    }
+
+    /**
+     * @param seed the seed
+     * @return the 64 bit xxHash (XXH64) of the bytes with the given seed; a fast non-cryptographic hash
+     */
+    public long xxHash64(long seed) {
+        return ByteHashes.xxHash64(this, seed);
+    }
+
+    /**
+     * @return the 128 bit x64 MurmurHash3 of the bytes with a seed of 0, the same as Guava's Hashing.murmur3_128()
+     */
+    public Bytes murmur3Hash128() {
+        return murmur3Hash128(0);
+    }
+
+    /**
+     * @param seed the seed
+     * @return the 128 bit x64 MurmurHash3 of the bytes with the given seed, the same as Guava's Hashing.murmur3_128(seed)
+     */
+    public Bytes murmur3Hash128(int seed) {
+        return ByteHashes.murmur3Hash128(this, seed);
+    }
+
+    /**
+     * @return the CRC-32C (Castagnoli) checksum of the bytes, computed with the hardware accelerated
+     *         java.util.zip.CRC32C where the JVM provides it
+     */
+    public long crc32c() {
+        return ByteHashes.crc32c(this);
+    }
+
+    /**
+     * @param digest the digest to update with the bytes, in place over their storage, before completing it
+     * @return the digest of the bytes; the digest is reset, and so may be reused
+     */
+    public Bytes digest(MessageDigest digest) {
+        for (ByteBuffer chunk : chunks()) {
+            digest.update(chunk);
+        }
+        return wrap(digest.digest());
+    }
+
+    /**
+     * @param algorithm the name of a {@link MessageDigest} algorithm, such as "SHA-256"
+     * @return the digest of the bytes
+     * @throws IllegalArgumentException if the algorithm is not available
+     */
+    public Bytes digest(String algorithm) {
+        try {
+            return digest(MessageDigest.getInstance(algorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(algorithm + " is not an available digest algorithm", e);
+        }
+    }
+
+    /**
+     * @return the SHA-256 digest of the bytes
+     */
+    public Bytes sha256() {
+        return digest("SHA-256");
+    }
+
+    /**
+     * @param other the bytes to compare with
+     * @return the index of the first byte that differs between these bytes and other, which is the size of the shorter
+     *         if one is a prefix of the other, or -1 if they are equal
+     */
+    public int mismatch(Bytes other) {
+        final int common = Math.min(size(), other.size());
+        final Iterator<ByteBuffer> mine = storage().iterator();
+        final Iterator<ByteBuffer> theirs = other.storage().iterator();
+        ByteBuffer a = EMPTY_BUFFER;
+        ByteBuffer b = EMPTY_BUFFER;
+        int index = 0;
+        while (index < common) {
+            if (!a.hasRemaining()) a = mine.next();
+            if (!b.hasRemaining()) b = theirs.next();
+            final int length = Math.min(Math.min(a.remaining(), b.remaining()), common - index);
+            final int found = mismatch(a, b, length);
+            if (found >= 0) return index + found;
+            a.position(a.position() + length);
+            b.position(b.position() + length);
+            index += length;
+        }
+        return size() == other.size() ? -1 : common;
+    }
+
+    private static int mismatch(ByteBuffer a, ByteBuffer b, int length) {
+        if (a.hasArray() && b.hasArray()) {
+            return ByteArrays.mismatch(
+                    a.array(), a.arrayOffset() + a.position(), b.array(), b.arrayOffset() + b.position(), length);
+        }
+        int i = 0;
+        for (; i <= length - Long.BYTES; i += Long.BYTES) {
+            final long difference = bigEndianLong(a, a.position() + i) ^ bigEndianLong(b, b.position() + i);
+            if (difference != 0) return i + (Long.numberOfLeadingZeros(difference) >>> 3);
+        }
+        for (; i < length; i++) {
+            if (a.get(a.position() + i) != b.get(b.position() + i)) return i;
+        }
+        return -1;
+    }
+
+    private static long bigEndianLong(ByteBuffer buffer, int index) {
+        final long value = buffer.getLong(index);
+        return buffer.order() == BIG_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    /**
+     * @param prefix the bytes to look for
+     * @return true if these bytes begin with prefix
+     */
+    public boolean startsWith(Bytes prefix) {
+        return prefix.size() <= size() && slice(0, prefix.size()).mismatch(prefix) == -1;
+    }
+
+    /**
+     * @param suffix the bytes to look for
+     * @return true if these bytes end with suffix
+     */
+    public boolean endsWith(Bytes suffix) {
+        return suffix.size() <= size() && slice(size() - suffix.size(), size()).mismatch(suffix) == -1;
+    }
+
+    /**
+     * Compares lexicographically, treating each byte as an unsigned value between 0 and 255; a prefix sorts before the
+     * bytes it is a prefix of.
+     */
     @Override
-    public int size() {
-        return bytes.length;
+    public int compareTo(Bytes other) {
+        final int index = mismatch(other);
+        if (index == -1) return 0;
+        if (index < size() && index < other.size()) {
+            return Integer.compare(at(index) & 0xFF, other.at(index) & 0xFF);
+        }
+        return Integer.compare(size(), other.size());
     }
 
     @Override
     public Byte get(int index) {
-        return bytes[index];
+        return byteAt(index);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof Byte ? indexOf((byte) (Byte) o) : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return o instanceof Byte ? lastIndexOf((byte) (Byte) o) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Byte> action) {
+        forEachByte(action::accept);
+    }
+
+    /**
+     * @return {@link #slice(int, int)}
+     */
+    @Override
+    public Bytes subList(int fromIndex, int toIndex) {
+        return slice(fromIndex, toIndex);
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Bytes bytes1 = (Bytes) o;
-        return Arrays.equals(bytes, bytes1.bytes);
+        if (!(o instanceof Bytes)) return false;
+        Bytes other = (Bytes) o;
+        if (size() != other.size()) return false;
+        if (hash != 0 && other.hash != 0 && hash != other.hash) return false;
+        return mismatch(other) == -1;
     }
 
+    /**
+     * @return the same hash code as any {@link List} of the same bytes; computed once and cached
+     */
     @Override
-    public int hashCode() {
-        return Arrays.hashCode(bytes);
+    public final int hashCode() {
+        int result = hash;
+        if (result == 0) {
+            result = computeHash();
+            hash = result;
+        }
+        return result;
+    }
+
+    int computeHash() {
+        int result = 1;
+        for (ByteBuffer chunk : chunks()) {
+            for (int i = chunk.position(); i < chunk.limit(); i++) {
+                result = 31 * result + chunk.get(i);
+            }
+        }
+        return result;
+    }
+
+    private void checkIndex(int index, int width) {
+        if (index < 0 || index > size() - width) {
+            throw new IndexOutOfBoundsException("index: " + index + ", width: " + width + ", size: " + size());
+        }
+    }
+
+    static void checkRange(int offset, int length, int arrayLength) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", array length: " + arrayLength);
+        }
+    }
+
+    /**
+     * Accepts bytes one at a time without boxing them.
+     */
+    @FunctionalInterface
+    public interface ByteConsumer {
+
+        /**
+         * @param value the byte
+         */
+        void accept(byte value);
+    }
+
+    private static final class ChunksInputStream extends InputStream {
+
+        private final Iterator<ByteBuffer> chunks;
+        private ByteBuffer current;
+
+        ChunksInputStream(final Iterator<ByteBuffer> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() {
+            return advance() ? current.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] destination, final int offset, final int length) {
+            checkRange(offset, length, destination.length);
+            if (length == 0) return 0;
+            if (!advance()) return -1;
+            final int read = Math.min(length, current.remaining());
+            current.get(destination, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) {
+            long skipped = 0;
+            while (skipped < n && advance()) {
+                final int skip = (int) Math.min(n - skipped, current.remaining());
+                current.position(current.position() + skip);
+                skipped += skip;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.remaining();
+        }
+
+        private boolean advance() {
+            while (current == null || !current.hasRemaining()) {
+                if (!chunks.hasNext()) return false;
+                current = chunks.next();
+            }
+            return true;
+        }
     }
 }
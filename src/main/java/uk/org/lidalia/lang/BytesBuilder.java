@@ -0,0 +1,218 @@
+package uk.org.lidalia.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds {@link Bytes} piece by piece without repeatedly copying what has already been appended.
+ *
+ * Bytes that are appended are linked in rather than copied, unless they are small; arrays, buffers and streams are copied
+ * into chunks that grow with the size of the result. {@link #build()} links the pieces into a single Bytes in time
+ * proportional to their number rather than their size, and may be called repeatedly as more is appended.
+ *
+ * <pre>
+ *     Bytes message = new BytesBuilder()
+ *         .append(headers)
+ *         .readFrom(body)
+ *         .append(trailer)
+ *         .build();
+ * </pre>
+ *
+ * A BytesBuilder is not thread safe.
+ */
+public final class BytesBuilder {
+
+    private static final int MIN_CHUNK_SIZE = 256;
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+    private final List<Bytes> parts = new ArrayList<>();
+    private byte[] chunk = new byte[0];
+    /**
+     * The index in chunk of the first byte not yet in parts.
+     */
+    private int chunkStart = 0;
+    /**
+     * The index in chunk of the next byte to write; chunk is never modified below this index.
+     */
+    private int chunkEnd = 0;
+    private long size = 0;
+
+    /**
+     * @param bytes the bytes to append, which are linked in rather than copied unless they are small
+     * @return this builder
+     */
+    public BytesBuilder append(final Bytes bytes) {
+        if (bytes.size() <= RopeBytes.LINK_THRESHOLD) {
+            reserve(bytes.size());
+            bytes.copyTo(chunk, chunkEnd);
+            chunkEnd += bytes.size();
+            size += bytes.size();
+        } else {
+            completeChunk();
+            parts.add(bytes);
+            size += bytes.size();
+        }
+        return this;
+    }
+
+    /**
+     * @param bytes the bytes to copy and append
+     * @return this builder
+     */
+    public BytesBuilder append(final byte[] bytes) {
+        return append(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes an array containing the bytes to copy and append
+     * @param offset the index in the array of the first byte to append
+     * @param length the number of bytes to append
+     * @return this builder
+     * @throws IndexOutOfBoundsException if the range is not within the array
+     */
+    public BytesBuilder append(final byte[] bytes, final int offset, final int length) {
+        Bytes.checkRange(offset, length, bytes.length);
+        int copied = 0;
+        while (copied < length) {
+            reserve(1);
+            final int toCopy = Math.min(length - copied, chunk.length - chunkEnd);
+            System.arraycopy(bytes, offset + copied, chunk, chunkEnd, toCopy);
+            chunkEnd += toCopy;
+            copied += toCopy;
+        }
+        size += length;
+        return this;
+    }
+
+    /**
+     * @param buffer the buffer whose remaining bytes to copy and append; its position is not changed
+     * @return this builder
+     */
+    public BytesBuilder append(final ByteBuffer buffer) {
+        final ByteBuffer remaining = buffer.duplicate();
+        size += remaining.remaining();
+        while (remaining.hasRemaining()) {
+            reserve(1);
+            final int toCopy = Math.min(remaining.remaining(), chunk.length - chunkEnd);
+            remaining.get(chunk, chunkEnd, toCopy);
+            chunkEnd += toCopy;
+        }
+        return this;
+    }
+
+    /**
+     * @param b the byte to append
+     * @return this builder
+     */
+    public BytesBuilder append(final byte b) {
+        reserve(1);
+        chunk[chunkEnd++] = b;
+        size++;
+        return this;
+    }
+
+    /**
+     * Reads from a stream until it ends, directly into the builder's chunks.
+     *
+     * @param in the stream to read; it is not closed
+     * @return this builder
+     * @throws IOException if reading from the stream fails
+     */
+    public BytesBuilder readFrom(final InputStream in) throws IOException {
+        return readFrom(in, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads from a stream until it ends or the given number of bytes have been read, directly into the builder's chunks.
+     *
+     * @param in the stream to read; it is not closed
+     * @param maxBytes the maximum number of bytes to read
+     * @return this builder
+     * @throws IOException if reading from the stream fails
+     */
+    public BytesBuilder readFrom(final InputStream in, final long maxBytes) throws IOException {
+        long remaining = maxBytes;
+        while (remaining > 0) {
+            reserve(1);
+            final int read = in.read(chunk, chunkEnd, (int) Math.min(remaining, chunk.length - chunkEnd));
+            if (read < 0) break;
+            chunkEnd += read;
+            size += read;
+            remaining -= read;
+        }
+        return this;
+    }
+
+    /**
+     * Lets a writer write directly into the builder's current chunk, as {@link #readFrom(InputStream)} does.
+     *
+     * @param writer writes at most the given number of bytes into the chunk at the given offset
+     * @param <E> the type of exception the writer may throw
+     * @return the number of bytes the writer wrote
+     * @throws E if the writer fails
+     */
+    <E extends Exception> int write(final ChunkWriter<E> writer) throws E {
+        reserve(1);
+        final int written = writer.write(chunk, chunkEnd, chunk.length - chunkEnd);
+        chunkEnd += written;
+        size += written;
+        return written;
+    }
+
+    /**
+     * @param <E> the type of exception the writer may throw
+     */
+    interface ChunkWriter<E extends Exception> {
+
+        /**
+         * @return the number of bytes written
+         */
+        int write(byte[] chunk, int offset, int length) throws E;
+    }
+
+    /**
+     * @return the number of bytes appended so far
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes appended so far; the builder may continue to be used afterwards without affecting them
+     * @throws IllegalArgumentException if more than {@link Integer#MAX_VALUE} bytes have been appended
+     */
+    public Bytes build() {
+        final List<Bytes> all = new ArrayList<>(parts.size() + 1);
+        all.addAll(parts);
+        all.add(Bytes.wrap(chunk, chunkStart, chunkEnd - chunkStart));
+        return Bytes.concat(all);
+    }
+
+    @Override
+    public String toString() {
+        return "BytesBuilder[size=" + size + "]";
+    }
+
+    private void reserve(final int length) {
+        if (chunk.length - chunkEnd < length) {
+            completeChunk();
+            chunk = new byte[Math.max(length, nextChunkSize())];
+            chunkStart = 0;
+            chunkEnd = 0;
+        }
+    }
+
+    private int nextChunkSize() {
+        return (int) Math.min(Math.max(size / 4, MIN_CHUNK_SIZE), MAX_CHUNK_SIZE);
+    }
+
+    private void completeChunk() {
+        if (chunkEnd > chunkStart) {
+            parts.add(Bytes.wrap(chunk, chunkStart, chunkEnd - chunkStart));
+            chunkStart = chunkEnd;
+        }
+    }
+}
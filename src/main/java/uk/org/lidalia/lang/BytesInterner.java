@@ -0,0 +1,186 @@
+package uk.org.lidalia.lang;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded pool of canonical {@link Bytes}, so that payloads which recur again and again - header names and values,
+ * tokens, small blobs - are held once rather than copied into a fresh array every time they are decoded.
+ *
+ * <pre>
+ *     BytesInterner headerNames = new BytesInterner(1024);
+ *
+ *     Bytes name = headerNames.intern(buffer, offset, length);
+ * </pre>
+ *
+ * Lookups are by content, using the hash cached by each Bytes, and wrap the caller's array or buffer rather than copying
+ * it; only the first occurrence of a payload is copied, into an array of its own. Entries are split across stripes, each
+ * guarded by its own lock and each evicting its least recently used entries once full, so that concurrent lookups of
+ * different payloads rarely contend.
+ *
+ * A BytesInterner is thread safe.
+ */
+public final class BytesInterner {
+
+    /**
+     * Payloads longer than this are not interned by default.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 256;
+
+    private static final int MAX_STRIPES = 16;
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    private final int maxLength;
+    private final PerThreadCounter hits = new PerThreadCounter();
+    private final PerThreadCounter misses = new PerThreadCounter();
+
+    /**
+     * @param maxEntries the maximum number of payloads held; the least recently used are evicted beyond it
+     */
+    public BytesInterner(final int maxEntries) {
+        this(maxEntries, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param maxEntries the maximum number of payloads held; the least recently used are evicted beyond it
+     * @param maxLength the length of the longest payload to intern; longer ones are returned without being interned
+     */
+    public BytesInterner(final int maxEntries, final int maxLength) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1; was " + maxEntries);
+        if (maxLength < 0) throw new IllegalArgumentException("maxLength must not be negative; was " + maxLength);
+        final int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(maxEntries));
+        this.stripes = new Stripe[stripeCount];
+        this.stripeShift = Integer.SIZE - Integer.numberOfTrailingZeros(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maxEntries / stripeCount);
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @param bytes the payload to intern
+     * @return the canonical Bytes equal to bytes, held in an array of its own; or bytes itself if it is longer than the
+     *         maximum length
+     */
+    public Bytes intern(final Bytes bytes) {
+        if (bytes.size() > maxLength) return bytes;
+        return stripeFor(bytes).intern(bytes);
+    }
+
+    /**
+     * @param array the array holding the payload; it is only read, and need not stay unmodified
+     * @param offset the index in the array of the first byte of the payload
+     * @param length the number of bytes in the payload
+     * @return the canonical Bytes equal to the payload, held in an array of its own; or a copy of the payload if it is
+     *         longer than the maximum length
+     * @throws IndexOutOfBoundsException if the range is not within the array
+     */
+    public Bytes intern(final byte[] array, final int offset, final int length) {
+        final Bytes lookup = Bytes.wrap(array, offset, length);
+        if (length > maxLength) return Bytes.wrap(lookup.array());
+        return stripeFor(lookup).intern(lookup);
+    }
+
+    /**
+     * @param buffer the buffer, heap or direct, holding the payload between its position and its limit; it is only read,
+     *               its position is not changed, and it need not stay unmodified
+     * @return the canonical Bytes equal to the payload, held in an array of its own; or a copy of the payload if it is
+     *         longer than the maximum length
+     */
+    public Bytes intern(final ByteBuffer buffer) {
+        final Bytes lookup = Bytes.wrap(buffer);
+        if (lookup.size() > maxLength) return Bytes.wrap(lookup.array());
+        return stripeFor(lookup).intern(lookup);
+    }
+
+    /**
+     * @return the number of payloads currently held
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of times a payload was found already interned
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of times a payload had to be copied and interned
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Drops every payload held.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Takes the stripe from the high bits of a multiplicative hash, leaving the entries within each stripe spread over
+     * all of the low bits that pick their buckets.
+     */
+    private Stripe stripeFor(final Bytes bytes) {
+        return stripes[(int) ((bytes.hashCode() * GOLDEN_RATIO & 0xFFFFFFFFL) >>> stripeShift)];
+    }
+
+    @Override
+    public String toString() {
+        return "BytesInterner[size=" + size() + ", hits=" + hits() + ", misses=" + misses() + "]";
+    }
+
+    /**
+     * Access ordered, so that its eldest entry is the least recently used.
+     */
+    private final class Stripe extends LinkedHashMap<Bytes, Bytes> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Stripe(final int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        /**
+         * @param bytes may be backed by storage the caller goes on to modify, so is copied before being held
+         */
+        synchronized Bytes intern(final Bytes bytes) {
+            final Bytes canonical = get(requireNonNull(bytes));
+            if (canonical != null) {
+                hits.increment();
+                return canonical;
+            }
+            misses.increment();
+            final Bytes copy = Bytes.wrap(bytes.array());
+            put(copy, copy);
+            return copy;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Bytes, Bytes> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package uk.org.lidalia.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sequence of bytes to search for, with its Boyer-Moore-Horspool skip table computed once so that it can be searched
+ * for in any number of {@link Bytes}.
+ *
+ * <pre>
+ *     BytesPattern crlf = BytesPattern.compile(Bytes.of("\r\n"));
+ *
+ *     for (Bytes message : messages) {
+ *         List&lt;Bytes&gt; lines = crlf.split(message);
+ *         ...
+ *     }
+ * </pre>
+ *
+ * A BytesPattern is immutable and thread safe.
+ */
+public final class BytesPattern {
+
+    /**
+     * @param pattern the bytes to search for
+     * @return a BytesPattern for them
+     */
+    public static BytesPattern compile(final Bytes pattern) {
+        return new BytesPattern(pattern);
+    }
+
+    private final Bytes pattern;
+    private final byte[] bytes;
+    private final int[] skip;
+    private volatile int[] reverseSkip;
+
+    private BytesPattern(final Bytes pattern) {
+        this.pattern = pattern;
+        this.bytes = pattern.array();
+        this.skip = bytes.length > 1 ? skipTable() : null;
+    }
+
+    /**
+     * For each byte value, how far a window may move forwards when that value is its last byte and the window does not
+     * match.
+     */
+    private int[] skipTable() {
+        final int[] table = new int[256];
+        Arrays.fill(table, bytes.length);
+        for (int i = 0; i < bytes.length - 1; i++) {
+            table[bytes[i] & 0xFF] = bytes.length - 1 - i;
+        }
+        return table;
+    }
+
+    /**
+     * For each byte value, how far a window may move backwards when that value is its first byte and the window does not
+     * match.
+     */
+    private int[] reverseSkipTable() {
+        int[] table = reverseSkip;
+        if (table == null) {
+            table = new int[256];
+            Arrays.fill(table, bytes.length);
+            for (int i = bytes.length - 1; i > 0; i--) {
+                table[bytes[i] & 0xFF] = i;
+            }
+            reverseSkip = table;
+        }
+        return table;
+    }
+
+    /**
+     * @return the bytes this pattern searches for
+     */
+    public Bytes pattern() {
+        return pattern;
+    }
+
+    /**
+     * @param toSearch the bytes to search
+     * @return the index of the first occurrence of the pattern in toSearch, or -1 if it does not occur
+     */
+    public int indexIn(final Bytes toSearch) {
+        return indexIn(toSearch, 0);
+    }
+
+    /**
+     * @param toSearch the bytes to search
+     * @param fromIndex the index to start searching from
+     * @return the index of the first occurrence of the pattern in toSearch at or after fromIndex, or -1 if it does not
+     *         occur
+     */
+    public int indexIn(final Bytes toSearch, final int fromIndex) {
+        final int start = Math.max(fromIndex, 0);
+        if (bytes.length == 0) return start <= toSearch.size() ? start : -1;
+        if (bytes.length == 1) return toSearch.indexOf(bytes[0], start);
+        final int last = bytes.length - 1;
+        final byte lastByte = bytes[last];
+        for (int i = start; i <= toSearch.size() - bytes.length; ) {
+            final byte candidate = toSearch.at(i + last);
+            if (candidate == lastByte && matchesAt(toSearch, i, last)) return i;
+            i += skip[candidate & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * @param toSearch the bytes to search
+     * @return the index of the last occurrence of the pattern in toSearch, or -1 if it does not occur
+     */
+    public int lastIndexIn(final Bytes toSearch) {
+        if (bytes.length == 0) return toSearch.size();
+        if (bytes.length == 1) return toSearch.lastIndexOf(bytes[0]);
+        final int[] table = reverseSkipTable();
+        final byte firstByte = bytes[0];
+        for (int i = toSearch.size() - bytes.length; i >= 0; ) {
+            final byte candidate = toSearch.at(i);
+            if (candidate == firstByte && matchesAt(toSearch, i + 1, bytes.length - 1, 1)) return i;
+            i -= table[candidate & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * @param toSplit the bytes to split
+     * @return the slices of toSplit before, between and after each non-overlapping occurrence of the pattern, including
+     *         any empty ones; toSplit itself if the pattern does not occur
+     * @throws IllegalArgumentException if the pattern is empty
+     */
+    public List<Bytes> split(final Bytes toSplit) {
+        if (bytes.length == 0) throw new IllegalArgumentException("Cannot split on an empty pattern");
+        final List<Bytes> pieces = new ArrayList<>();
+        int start = 0;
+        for (int found = indexIn(toSplit, 0); found >= 0; found = indexIn(toSplit, start)) {
+            pieces.add(toSplit.slice(start, found));
+            start = found + bytes.length;
+        }
+        pieces.add(toSplit.slice(start, toSplit.size()));
+        return pieces;
+    }
+
+    private boolean matchesAt(final Bytes toSearch, final int index, final int length) {
+        return matchesAt(toSearch, index, length, 0);
+    }
+
+    private boolean matchesAt(final Bytes toSearch, final int index, final int length, final int patternOffset) {
+        for (int j = length - 1; j >= 0; j--) {
+            if (toSearch.at(index + j) != bytes[patternOffset + j]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || o instanceof BytesPattern && pattern.equals(((BytesPattern) o).pattern);
+    }
+
+    @Override
+    public int hashCode() {
+        return pattern.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "BytesPattern" + pattern;
+    }
+}
@@ -0,0 +1,516 @@
+package uk.org.lidalia.lang;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A content addressed store of {@link Bytes}, kept in memory mapped segment files in a directory and keyed by the
+ * SHA-256 digest of their content.
+ *
+ * <pre>
+ *     try (BytesStore store = BytesStore.open(directory)) {
+ *         Bytes digest = store.put(payload);
+ *         ...
+ *         Bytes stored = store.get(digest).get();
+ *     }
+ * </pre>
+ *
+ * Putting content that is already stored adds a reference to it rather than writing it again. Content is read back
+ * without copying, as Bytes backed by the mapped segment itself, and stays readable for as long as those Bytes are held.
+ * Releasing the last reference to content removes it from the store at once; the space it took up on disk is reclaimed
+ * by {@link #compact()}.
+ *
+ * Every change is appended to the last segment as a record, and the records are replayed to rebuild the index when
+ * the store is opened. Changes are not guaranteed to have reached the disk until {@link #flush()} or {@link #close()}.
+ * Each record carries a CRC32C checksum, and replaying a segment stops at the first record that does not match it, so
+ * a record left incomplete by a crash is ignored.
+ *
+ * Only one BytesStore at a time, in any process, may have a directory open; a lock on a file in the directory is held
+ * until the store is closed.
+ *
+ * A BytesStore is thread safe; reads do not lock.
+ */
+public final class BytesStore implements Closeable {
+
+    /**
+     * The size of each segment file unless a larger one is needed to hold a single piece of content.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final byte BLOB = 1;
+    private static final byte REFERENCE = 2;
+    private static final byte RELEASE = 3;
+    private static final int DIGEST_SIZE = 32;
+    /**
+     * Every record is a type, then the checksum of the rest of the record, then a digest.
+     */
+    private static final int CHECKSUMMED_OFFSET = 1 + Integer.BYTES;
+    private static final int MARKER_SIZE = CHECKSUMMED_OFFSET + DIGEST_SIZE;
+    private static final int BLOB_HEADER_SIZE = MARKER_SIZE + Integer.BYTES + Integer.BYTES;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String LOCK_FILE = "lock";
+
+    /**
+     * @param directory the directory holding the store's segment files; created if it does not exist
+     * @return the store, with its index rebuilt from any segment files already in the directory
+     * @throws IOException if the directory or its segment files cannot be read, or the directory is already open
+     */
+    public static BytesStore open(final Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory the directory holding the store's segment files; created if it does not exist
+     * @param segmentSize the size of each new segment file unless a larger one is needed to hold a single piece of content
+     * @return the store, with its index rebuilt from any segment files already in the directory
+     * @throws IOException if the directory or its segment files cannot be read, or the directory is already open
+     */
+    public static BytesStore open(final Path directory, final int segmentSize) throws IOException {
+        if (segmentSize < BLOB_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size " + segmentSize + " is below the minimum of "
+                    + BLOB_HEADER_SIZE);
+        }
+        Files.createDirectories(directory);
+        final FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), CREATE, WRITE);
+        try {
+            if (tryLock(lockChannel) == null) throw new IOException(directory + " is already open as a BytesStore");
+            final List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+                segmentFiles.forEach(files::add);
+            }
+            Collections.sort(files);
+            final BytesStore store = new BytesStore(directory, segmentSize, lockChannel);
+            for (int i = 0; i < files.size(); i++) {
+                final boolean last = i == files.size() - 1;
+                store.replay(Segment.open(files.get(i), last));
+            }
+            if (!store.segments.isEmpty()) store.active = store.segments.get(store.segments.size() - 1);
+            store.recount();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the lock, or null if it is held by another process or another store in this one
+     */
+    private static FileLock tryLock(final FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException heldByThisProcess) {
+            return null;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    /**
+     * Holds the lock on the directory until closed.
+     */
+    private final FileChannel lockChannel;
+    private final Map<Bytes, Blob> index = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active = null;
+    private long nextSegmentNumber = 0;
+    private long storedBytes = 0;
+    private long liveBytes = 0;
+    private volatile boolean closed = false;
+
+    private BytesStore(final Path directory, final int segmentSize, final FileChannel lockChannel) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.lockChannel = lockChannel;
+    }
+
+    /**
+     * Stores content, or adds a reference to it if identical content is already stored.
+     *
+     * @param content the content to store
+     * @return the SHA-256 digest of the content, by which it can be read back and released
+     * @throws IOException if the content cannot be written
+     * @throws IllegalStateException if this store has been closed
+     */
+    public Bytes put(final Bytes content) throws IOException {
+        final Bytes digest = content.sha256();
+        synchronized (lock) {
+            checkOpen();
+            final Blob existing = index.get(digest);
+            if (existing != null) {
+                appendMarker(REFERENCE, digest);
+                existing.references++;
+            } else {
+                index.put(digest, appendBlob(digest, 1, content));
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * @param digest the SHA-256 digest of the content
+     * @return the content, backed by the mapped segment rather than copied, or empty if no content with that digest is
+     *         stored
+     * @throws IllegalStateException if this store has been closed
+     */
+    public Optional<Bytes> get(final Bytes digest) {
+        checkOpen();
+        final Blob blob = index.get(requireNonNull(digest));
+        return blob == null ? Optional.empty() : Optional.of(blob.content());
+    }
+
+    /**
+     * @param digest the SHA-256 digest of the content
+     * @return true if content with that digest is stored
+     */
+    public boolean contains(final Bytes digest) {
+        return index.containsKey(requireNonNull(digest));
+    }
+
+    /**
+     * @param digest the SHA-256 digest of the content
+     * @return the number of times the content has been put and not released; 0 if it is not stored
+     */
+    public int references(final Bytes digest) {
+        synchronized (lock) {
+            final Blob blob = index.get(requireNonNull(digest));
+            return blob == null ? 0 : blob.references;
+        }
+    }
+
+    /**
+     * Releases one reference to content, removing it from the store if that was the last.
+     *
+     * @param digest the SHA-256 digest of the content
+     * @return true if the content was stored
+     * @throws IOException if the release cannot be written
+     * @throws IllegalStateException if this store has been closed
+     */
+    public boolean release(final Bytes digest) throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            final Blob blob = index.get(requireNonNull(digest));
+            if (blob == null) return false;
+            appendMarker(RELEASE, digest);
+            if (--blob.references == 0) {
+                index.remove(digest);
+                liveBytes -= BLOB_HEADER_SIZE + blob.length;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of distinct pieces of content stored
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the number of bytes in the segment files taken up by released content and by records of references, all of
+     *         which {@link #compact()} would reclaim
+     */
+    public long garbageBytes() {
+        synchronized (lock) {
+            return storedBytes - liveBytes;
+        }
+    }
+
+    /**
+     * Copies the content still stored into new segment files and deletes the old ones. Content already read from the
+     * store remains readable.
+     *
+     * @throws IOException if the content cannot be copied or the old segment files cannot be deleted
+     * @throws IllegalStateException if this store has been closed
+     */
+    public void compact() throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            final List<Segment> old = new ArrayList<>(segments);
+            segments.clear();
+            active = null;
+            try {
+                for (Map.Entry<Bytes, Blob> entry : index.entrySet()) {
+                    final Blob blob = entry.getValue();
+                    entry.setValue(appendBlob(entry.getKey(), blob.references, blob.content()));
+                }
+                flush();
+            } catch (IOException | RuntimeException e) {
+                segments.addAll(0, old);
+                recount();
+                throw e;
+            }
+            recount();
+            for (Segment segment : old) {
+                Files.deleteIfExists(segment.file);
+            }
+        }
+    }
+
+    /**
+     * Forces every change made so far out to the disk.
+     *
+     * @throws IllegalStateException if this store has been closed
+     */
+    public void flush() {
+        synchronized (lock) {
+            checkOpen();
+            if (active != null) active.force();
+        }
+    }
+
+    /**
+     * Flushes the store and releases its lock on the directory. Content already read from it remains readable.
+     *
+     * @throws IOException if the lock cannot be released
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) return;
+            flush();
+            closed = true;
+            lockChannel.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("BytesStore has been closed");
+    }
+
+    private Blob appendBlob(final Bytes digest, final int references, final Bytes content) throws IOException {
+        final int recordSize = recordSize(content);
+        final Segment segment = segmentWithRoomFor(recordSize);
+        final int offset = segment.appendBlob(digest, references, content);
+        storedBytes += recordSize;
+        liveBytes += recordSize;
+        return new Blob(segment, offset, content.size(), references);
+    }
+
+    private void appendMarker(final byte type, final Bytes digest) throws IOException {
+        segmentWithRoomFor(MARKER_SIZE).appendMarker(type, digest);
+        storedBytes += MARKER_SIZE;
+    }
+
+    private static int recordSize(final Bytes content) {
+        final long recordSize = (long) BLOB_HEADER_SIZE + content.size();
+        if (recordSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot store " + content.size() + " bytes; at most "
+                    + (Integer.MAX_VALUE - BLOB_HEADER_SIZE) + " are allowed");
+        }
+        return (int) recordSize;
+    }
+
+    private Segment segmentWithRoomFor(final int recordSize) throws IOException {
+        if (active == null || active.remaining() < recordSize) {
+            if (active != null) active.force();
+            final Path file = directory.resolve(String.format("%016d%s", nextSegmentNumber++, SEGMENT_SUFFIX));
+            active = Segment.create(file, Math.max(segmentSize, recordSize));
+            segments.add(active);
+        }
+        return active;
+    }
+
+    /**
+     * Applies each record in the segment in turn, stopping at the first that is unwritten, incomplete or fails its
+     * checksum.
+     */
+    private void replay(final Segment segment) {
+        final ByteBuffer records = segment.mapping;
+        int position = 0;
+        while (position + MARKER_SIZE <= records.capacity()) {
+            final byte type = records.get(position);
+            if (type != BLOB && type != REFERENCE && type != RELEASE) break;
+            final int recordEnd;
+            if (type == BLOB) {
+                if (position + BLOB_HEADER_SIZE > records.capacity()) break;
+                final int length = records.getInt(position + MARKER_SIZE + Integer.BYTES);
+                if (length < 0 || length > records.capacity() - position - BLOB_HEADER_SIZE) break;
+                recordEnd = position + BLOB_HEADER_SIZE + length;
+            } else {
+                recordEnd = position + MARKER_SIZE;
+            }
+            if (records.getInt(position + 1) != segment.checksum(position, recordEnd)) break;
+
+            final Bytes digest = Bytes.wrap(segment.slice(position + CHECKSUMMED_OFFSET, DIGEST_SIZE).array());
+            final Blob blob = index.get(digest);
+            if (type == BLOB) {
+                final int references = records.getInt(position + MARKER_SIZE);
+                final int offset = position + BLOB_HEADER_SIZE;
+                index.put(digest, new Blob(segment, offset, recordEnd - offset, references));
+            } else if (type == REFERENCE) {
+                if (blob != null) blob.references++;
+            } else {
+                if (blob != null && --blob.references == 0) index.remove(digest);
+            }
+            position = recordEnd;
+        }
+        segment.end = position;
+        segments.add(segment);
+        nextSegmentNumber = Math.max(nextSegmentNumber, segment.number() + 1);
+    }
+
+    private void recount() {
+        storedBytes = 0;
+        for (Segment segment : segments) {
+            storedBytes += segment.end;
+        }
+        liveBytes = 0;
+        for (Blob blob : index.values()) {
+            liveBytes += BLOB_HEADER_SIZE + blob.length;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BytesStore[" + directory + ", size=" + size() + "]";
+    }
+
+    private static final class Blob {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        /**
+         * Guarded by the store's lock.
+         */
+        private int references;
+
+        Blob(final Segment segment, final int offset, final int length, final int references) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.references = references;
+        }
+
+        Bytes content() {
+            return segment.slice(offset, length);
+        }
+    }
+
+    /**
+     * A file mapped into memory in full. Only the last segment of a store is appended to, and never once it has been
+     * replaced by a new one; every other segment opened from an existing file is read only.
+     */
+    private static final class Segment {
+
+        static Segment create(final Path file, final int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+                return new Segment(file, channel.map(READ_WRITE, 0, capacity));
+            }
+        }
+
+        static Segment open(final Path file, final boolean writable) throws IOException {
+            try (FileChannel channel = writable ? FileChannel.open(file, READ, WRITE) : FileChannel.open(file, READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException(file + " is too large to be a segment of a BytesStore");
+                }
+                return new Segment(file, channel.map(writable ? READ_WRITE : READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        private final Path file;
+        /**
+         * Big endian; only ever read or written through duplicates or by absolute index.
+         */
+        private final MappedByteBuffer mapping;
+        /**
+         * Guarded by the store's lock.
+         */
+        private int end = 0;
+
+        private Segment(final Path file, final MappedByteBuffer mapping) {
+            this.file = file;
+            this.mapping = mapping;
+        }
+
+        long number() {
+            final String name = file.getFileName().toString();
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        }
+
+        int remaining() {
+            return mapping.capacity() - end;
+        }
+
+        /**
+         * @return the offset of the content within the segment
+         */
+        int appendBlob(final Bytes digest, final int references, final Bytes content) {
+            final ByteBuffer record = mapping.duplicate();
+            record.position(end + CHECKSUMMED_OFFSET);
+            put(record, digest);
+            record.putInt(references).putInt(content.size());
+            final int offset = record.position();
+            put(record, content);
+            complete(BLOB, record.position());
+            return offset;
+        }
+
+        void appendMarker(final byte type, final Bytes digest) {
+            final ByteBuffer record = mapping.duplicate();
+            record.position(end + CHECKSUMMED_OFFSET);
+            put(record, digest);
+            complete(type, record.position());
+        }
+
+        /**
+         * Nothing orders writes to a mapping as they reach the disk, so after a crash any part of a record may be missing;
+         * it is the checksum that lets replay tell. The byte after the record is zeroed so that replay stops there
+         * rather than running on into whatever an earlier store left beyond the last record it replayed.
+         */
+        private void complete(final byte type, final int recordEnd) {
+            if (recordEnd < mapping.capacity()) mapping.put(recordEnd, (byte) 0);
+            mapping.putInt(end + 1, checksum(end, recordEnd));
+            mapping.put(end, type);
+            end = recordEnd;
+        }
+
+        int checksum(final int recordStart, final int recordEnd) {
+            final int checksummedStart = recordStart + CHECKSUMMED_OFFSET;
+            return (int) ByteHashes.crc32c(slice(checksummedStart, recordEnd - checksummedStart));
+        }
+
+        private static void put(final ByteBuffer record, final Bytes bytes) {
+            for (ByteBuffer chunk : bytes.chunks()) {
+                record.put(chunk);
+            }
+        }
+
+        Bytes slice(final int offset, final int length) {
+            final ByteBuffer slice = mapping.duplicate();
+            slice.limit(offset + length);
+            slice.position(offset);
+            return Bytes.wrap(slice);
+        }
+
+        void force() {
+            mapping.force();
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package uk.org.lidalia.lang;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
+import static java.util.zip.Deflater.DEFAULT_STRATEGY;
+
+/**
+ * A compression format - gzip, zlib or raw deflate - with a compression level and strategy, for compressing and
+ * decompressing {@link Bytes}.
+ *
+ * <pre>
+ *     Bytes compressed = payload.compress(Compression.GZIP.withLevel(Deflater.BEST_SPEED));
+ *     Bytes payload = compressed.decompress(Compression.GZIP);
+ * </pre>
+ *
+ * {@link Deflater}s, {@link Inflater}s and their buffers are pooled per {@link Thread} rather than created, and their
+ * native memory freed, on every call. Input held in arrays is read in place, and the output is deflated or inflated
+ * directly into the chunks of a {@link BytesBuilder}, so it is never copied as it grows.
+ */
+public final class Compression {
+
+    /**
+     * RFC 1952 gzip, as written by {@link java.util.zip.GZIPOutputStream}.
+     */
+    public static final Compression GZIP = new Compression(Format.GZIP, DEFAULT_COMPRESSION, DEFAULT_STRATEGY);
+
+    /**
+     * RFC 1950 zlib, as written by {@link java.util.zip.DeflaterOutputStream}.
+     */
+    public static final Compression ZLIB = new Compression(Format.ZLIB, DEFAULT_COMPRESSION, DEFAULT_STRATEGY);
+
+    /**
+     * RFC 1951 deflate, with no header or trailer.
+     */
+    public static final Compression DEFLATE = new Compression(Format.DEFLATE, DEFAULT_COMPRESSION, DEFAULT_STRATEGY);
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_PER_THREAD = 2;
+
+    private static final int GZIP_MAGIC = 0x8B1F;
+    private static final int GZIP_HEADER_CRC = 2;
+    private static final int GZIP_EXTRA = 4;
+    private static final int GZIP_NAME = 8;
+    private static final int GZIP_COMMENT = 16;
+    private static final byte[] GZIP_HEADER = {0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final ObjectPool<Deflater> RAW_DEFLATERS = deflaters(true);
+    private static final ObjectPool<Deflater> ZLIB_DEFLATERS = deflaters(false);
+    private static final ObjectPool<Inflater> RAW_INFLATERS = inflaters(true);
+    private static final ObjectPool<Inflater> ZLIB_INFLATERS = inflaters(false);
+    private static final ObjectPool<byte[]> BUFFERS = new ObjectPool<>(
+            () -> new byte[BUFFER_SIZE], buffer -> {}, MAX_POOLED_PER_THREAD);
+
+    private static ObjectPool<Deflater> deflaters(final boolean raw) {
+        return new ObjectPool<>(
+                () -> new Deflater(DEFAULT_COMPRESSION, raw), Deflater::reset, Deflater::end, MAX_POOLED_PER_THREAD);
+    }
+
+    private static ObjectPool<Inflater> inflaters(final boolean raw) {
+        return new ObjectPool<>(() -> new Inflater(raw), Inflater::reset, Inflater::end, MAX_POOLED_PER_THREAD);
+    }
+
+    private enum Format {
+        GZIP, ZLIB, DEFLATE
+    }
+
+    private final Format format;
+    private final int level;
+    private final int strategy;
+
+    private Compression(final Format format, final int level, final int strategy) {
+        this.format = format;
+        this.level = level;
+        this.strategy = strategy;
+    }
+
+    /**
+     * @param level a compression level between {@link Deflater#NO_COMPRESSION} and {@link Deflater#BEST_COMPRESSION}, or
+     *              {@link Deflater#DEFAULT_COMPRESSION}
+     * @return this compression with the given level
+     * @throws IllegalArgumentException if level is not a valid compression level
+     */
+    public Compression withLevel(final int level) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        return new Compression(format, level, strategy);
+    }
+
+    /**
+     * @param strategy {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}
+     * @return this compression with the given strategy
+     * @throws IllegalArgumentException if strategy is not a valid compression strategy
+     */
+    public Compression withStrategy(final int strategy) {
+        if (strategy != DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("Invalid compression strategy " + strategy);
+        }
+        return new Compression(format, level, strategy);
+    }
+
+    /**
+     * @param uncompressed the bytes to compress, which are read in place over their storage
+     * @return the compressed bytes
+     */
+    public Bytes compress(final Bytes uncompressed) {
+        try (ObjectPool.Handle<Deflater> deflater = deflaters().acquire();
+             ObjectPool.Handle<byte[]> input = BUFFERS.acquire()) {
+            final Compressor compressor = new Compressor(deflater.get());
+            for (ByteBuffer chunk : uncompressed.storage()) {
+                if (chunk.hasArray()) {
+                    compressor.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                } else {
+                    while (chunk.hasRemaining()) {
+                        final int length = Math.min(chunk.remaining(), input.get().length);
+                        chunk.get(input.get(), 0, length);
+                        compressor.write(input.get(), 0, length);
+                    }
+                }
+            }
+            return compressor.finish();
+        }
+    }
+
+    /**
+     * @param uncompressed the stream to read until it ends and compress; it is not closed
+     * @return the compressed bytes
+     * @throws IOException if reading from the stream fails
+     */
+    public Bytes compress(final InputStream uncompressed) throws IOException {
+        try (ObjectPool.Handle<Deflater> deflater = deflaters().acquire();
+             ObjectPool.Handle<byte[]> input = BUFFERS.acquire()) {
+            final Compressor compressor = new Compressor(deflater.get());
+            for (int read = uncompressed.read(input.get()); read >= 0; read = uncompressed.read(input.get())) {
+                compressor.write(input.get(), 0, read);
+            }
+            return compressor.finish();
+        }
+    }
+
+    /**
+     * @param compressed bytes compressed in this format, which are read in place over their storage; gzip data may
+     *                   consist of several concatenated members
+     * @return the decompressed bytes
+     * @throws IllegalArgumentException if compressed is not valid data in this format
+     */
+    public Bytes decompress(final Bytes compressed) {
+        try (ObjectPool.Handle<Inflater> inflater = inflaters().acquire();
+             ObjectPool.Handle<byte[]> input = BUFFERS.acquire()) {
+            return decompress(inflater.get(), new ChunksInput(compressed.storage(), input.get()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid " + format + " data: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param compressed a stream of data compressed in this format, to read until it ends; it is not closed, and bytes
+     *                   after the end of the compressed data may have been read from it
+     * @return the decompressed bytes
+     * @throws ZipException if the stream is not valid data in this format
+     * @throws IOException if reading from the stream fails
+     */
+    public Bytes decompress(final InputStream compressed) throws IOException {
+        try (ObjectPool.Handle<Inflater> inflater = inflaters().acquire();
+             ObjectPool.Handle<byte[]> input = BUFFERS.acquire()) {
+            return decompress(inflater.get(), new StreamInput(compressed, input.get()));
+        }
+    }
+
+    private Bytes decompress(final Inflater inflater, final Input input) throws IOException {
+        final Decompressor decompressor = new Decompressor(inflater, input);
+        if (format == Format.GZIP) {
+            do {
+                decompressor.gzipMember();
+            } while (input.hasMore());
+        } else {
+            decompressor.inflate(null);
+        }
+        return decompressor.out.build();
+    }
+
+    private ObjectPool<Deflater> deflaters() {
+        return format == Format.ZLIB ? ZLIB_DEFLATERS : RAW_DEFLATERS;
+    }
+
+    private ObjectPool<Inflater> inflaters() {
+        return format == Format.ZLIB ? ZLIB_INFLATERS : RAW_INFLATERS;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Compression)) return false;
+        final Compression other = (Compression) o;
+        return format == other.format && level == other.level && strategy == other.strategy;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(format, level, strategy);
+    }
+
+    @Override
+    public String toString() {
+        return format + "[level=" + level + ", strategy=" + strategy + "]";
+    }
+
+    private final class Compressor {
+
+        private final Deflater deflater;
+        private final BytesBuilder out = new BytesBuilder();
+        private final CRC32 crc = new CRC32();
+        private long size = 0;
+
+        Compressor(final Deflater deflater) {
+            this.deflater = deflater;
+            deflater.setLevel(level);
+            deflater.setStrategy(strategy);
+            if (format == Format.GZIP) {
+                out.append(GZIP_HEADER);
+            }
+        }
+
+        void write(final byte[] bytes, final int offset, final int length) {
+            if (format == Format.GZIP) {
+                crc.update(bytes, offset, length);
+                size += length;
+            }
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+
+        Bytes finish() {
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain();
+            }
+            if (format == Format.GZIP) {
+                final ByteBuffer trailer = ByteBuffer.allocate(8).order(LITTLE_ENDIAN);
+                trailer.putInt((int) crc.getValue()).putInt((int) size);
+                out.append(trailer.array());
+            }
+            return out.build();
+        }
+
+        private void drain() {
+            out.write(deflater::deflate);
+        }
+    }
+
+    private static final class Decompressor {
+
+        private final Inflater inflater;
+        private final Input input;
+        private final BytesBuilder out = new BytesBuilder();
+
+        Decompressor(final Inflater inflater, final Input input) {
+            this.inflater = inflater;
+            this.input = input;
+        }
+
+        void gzipMember() throws IOException {
+            if (input.readShortLittleEndian() != GZIP_MAGIC) throw new ZipException("Not in gzip format");
+            if (input.readByte() != Deflater.DEFLATED) throw new ZipException("Unsupported gzip compression method");
+            final int flags = input.readByte();
+            input.skip(6);
+            if ((flags & GZIP_EXTRA) != 0) input.skip(input.readShortLittleEndian());
+            if ((flags & GZIP_NAME) != 0) input.skipNullTerminated();
+            if ((flags & GZIP_COMMENT) != 0) input.skipNullTerminated();
+            if ((flags & GZIP_HEADER_CRC) != 0) input.skip(2);
+
+            final CRC32 crc = new CRC32();
+            final long start = inflater.getBytesWritten();
+            inflate(crc);
+            final long size = inflater.getBytesWritten() - start;
+
+            final long expectedCrc = input.readIntLittleEndian() & 0xFFFFFFFFL;
+            final long expectedSize = input.readIntLittleEndian() & 0xFFFFFFFFL;
+            if (expectedCrc != crc.getValue()) throw new ZipException("Corrupt gzip trailer: CRC mismatch");
+            if (expectedSize != (size & 0xFFFFFFFFL)) throw new ZipException("Corrupt gzip trailer: size mismatch");
+            inflater.reset();
+        }
+
+        void inflate(final CRC32 crc) throws IOException {
+            try {
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        input.feed(inflater);
+                    } else if (inflater.needsDictionary()) {
+                        throw new ZipException("Compressed data needs a preset dictionary");
+                    }
+                    out.write((chunk, offset, length) -> {
+                        final int inflated = inflater.inflate(chunk, offset, length);
+                        if (crc != null) crc.update(chunk, offset, inflated);
+                        return inflated;
+                    });
+                }
+            } catch (DataFormatException e) {
+                final ZipException invalid = new ZipException(e.getMessage());
+                invalid.initCause(e);
+                throw invalid;
+            }
+            input.unread(inflater.getRemaining());
+        }
+    }
+
+    /**
+     * Compressed data, read a byte at a time for gzip headers and trailers and fed to the {@link Inflater} in between.
+     */
+    private abstract static class Input {
+
+        abstract void feed(Inflater inflater) throws IOException;
+
+        /**
+         * @param remaining the number of bytes last fed to the {@link Inflater} that it did not consume
+         */
+        abstract void unread(int remaining);
+
+        abstract boolean hasMore() throws IOException;
+
+        abstract int readByte() throws IOException;
+
+        int readShortLittleEndian() throws IOException {
+            return readByte() | readByte() << 8;
+        }
+
+        int readIntLittleEndian() throws IOException {
+            return readShortLittleEndian() | readShortLittleEndian() << 16;
+        }
+
+        void skip(final int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                readByte();
+            }
+        }
+
+        void skipNullTerminated() throws IOException {
+            while (readByte() != 0) {
+                // skip
+            }
+        }
+    }
+
+    /**
+     * The chunks of {@link Bytes}; those backed by an array are fed to the {@link Inflater} in place, others through a
+     * buffer.
+     */
+    private static final class ChunksInput extends Input {
+
+        private final Iterator<ByteBuffer> chunks;
+        private final byte[] buffer;
+        private ByteBuffer chunk = ByteBuffer.allocate(0);
+
+        ChunksInput(final List<ByteBuffer> chunks, final byte[] buffer) {
+            this.chunks = chunks.iterator();
+            this.buffer = buffer;
+        }
+
+        @Override
+        void feed(final Inflater inflater) throws IOException {
+            if (!hasMore()) throw new EOFException("Unexpected end of compressed data");
+            if (chunk.hasArray()) {
+                inflater.setInput(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                chunk.position(chunk.limit());
+            } else {
+                final int length = Math.min(chunk.remaining(), buffer.length);
+                chunk.get(buffer, 0, length);
+                inflater.setInput(buffer, 0, length);
+            }
+        }
+
+        @Override
+        void unread(final int remaining) {
+            chunk.position(chunk.position() - remaining);
+        }
+
+        @Override
+        boolean hasMore() {
+            while (!chunk.hasRemaining()) {
+                if (!chunks.hasNext()) return false;
+                chunk = chunks.next();
+            }
+            return true;
+        }
+
+        @Override
+        int readByte() throws IOException {
+            if (!hasMore()) throw new EOFException("Unexpected end of compressed data");
+            return chunk.get() & 0xFF;
+        }
+    }
+
+    /**
+     * A stream read through a buffer, so that bytes the {@link Inflater} did not consume can be read again.
+     */
+    private static final class StreamInput extends Input {
+
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position = 0;
+        private int limit = 0;
+
+        StreamInput(final InputStream in, final byte[] buffer) {
+            this.in = in;
+            this.buffer = buffer;
+        }
+
+        @Override
+        void feed(final Inflater inflater) throws IOException {
+            if (position == limit && !fill()) throw new EOFException("Unexpected end of compressed data");
+            inflater.setInput(buffer, position, limit - position);
+            position = limit;
+        }
+
+        @Override
+        void unread(final int remaining) {
+            position = limit - remaining;
+        }
+
+        @Override
+        boolean hasMore() throws IOException {
+            return position < limit || fill();
+        }
+
+        @Override
+        int readByte() throws IOException {
+            if (position == limit && !fill()) throw new EOFException("Unexpected end of compressed data");
+            return buffer[position++] & 0xFF;
+        }
+
+        private boolean fill() throws IOException {
+            final int read = in.read(buffer);
+            if (read < 0) return false;
+            position = 0;
+            limit = read;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package uk.org.lidalia.lang;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * {@link Bytes} backed by a range of an array on the heap.
+ */
+final class HeapBytes extends Bytes {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    HeapBytes(final byte[] bytes, final int offset, final int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    @Override
+    byte at(final int index) {
+        return bytes[offset + index];
+    }
+
+    @Override
+    short shortAt(final int index, final ByteOrder order) {
+        return ByteArrays.getShort(bytes, offset + index, order);
+    }
+
+    @Override
+    int intAt(final int index, final ByteOrder order) {
+        return ByteArrays.getInt(bytes, offset + index, order);
+    }
+
+    @Override
+    long longAt(final int index, final ByteOrder order) {
+        return ByteArrays.getLong(bytes, offset + index, order);
+    }
+
+    @Override
+    Bytes sliceOf(final int fromIndex, final int toIndex) {
+        return new HeapBytes(bytes, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    List<ByteBuffer> chunks() {
+        return Collections.singletonList(asReadOnlyByteBuffer());
+    }
+
+    @Override
+    List<ByteBuffer> storage() {
+        return Collections.singletonList(ByteBuffer.wrap(bytes, offset, length).slice());
+    }
+
+    @Override
+    public ByteBuffer asReadOnlyByteBuffer() {
+        return ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] array() {
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    @Override
+    public void copyTo(final byte[] destination, final int destinationOffset) {
+        System.arraycopy(bytes, offset, destination, destinationOffset, length);
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(bytes, offset, length);
+    }
+
+    @Override
+    public String string(final Charset charset) {
+        return ByteStrings.string(bytes, offset, length, charset);
+    }
+
+    @Override
+    public InputStream inputStream() {
+        return new ByteArrayInputStream(bytes, offset, length);
+    }
+
+    @Override
+    public void forEachByte(final ByteConsumer action) {
+        for (int i = offset; i < offset + length; i++) {
+            action.accept(bytes[i]);
+        }
+    }
+
+    @Override
+    public IntStream intStream() {
+        return IntStream.range(offset, offset + length).map(i -> bytes[i]);
+    }
+
+    @Override
+    public int indexOf(final byte b, final int fromIndex) {
+        if (fromIndex >= length) return -1;
+        final int found = ByteArrays.indexOf(bytes, offset + Math.max(fromIndex, 0), offset + length, b);
+        return found >= 0 ? found - offset : -1;
+    }
+
+    @Override
+    public int lastIndexOf(final byte b) {
+        final int found = ByteArrays.lastIndexOf(bytes, offset, offset + length, b);
+        return found >= 0 ? found - offset : -1;
+    }
+
+    @Override
+    public int mismatch(final Bytes other) {
+        if (!(other instanceof HeapBytes)) return super.mismatch(other);
+        final HeapBytes heap = (HeapBytes) other;
+        final int common = Math.min(length, heap.length);
+        final int found = ByteArrays.mismatch(bytes, offset, heap.bytes, heap.offset, common);
+        if (found >= 0) return found;
+        return length == heap.length ? -1 : common;
+    }
+
+    @Override
+    int computeHash() {
+        int result = 1;
+        for (int i = offset; i < offset + length; i++) {
+            result = 31 * result + bytes[i];
+        }
+        return result;
+    }
+}
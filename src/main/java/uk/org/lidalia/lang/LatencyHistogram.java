@@ -0,0 +1,135 @@
+package uk.org.lidalia.lang;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of non-negative long values, typically durations in nanoseconds.
+ *
+ * Values are counted in log-linear buckets: each power of two range is split into 16 equal buckets,
+ * so any value reported by {@link #percentile(double)} is within 1/16 of a value actually recorded.
+ * Recording a value is a few arithmetic operations and atomic increments, and allocates nothing.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value the value to record; negative values are recorded as 0
+     */
+    public void record(final long value) {
+        final long nonNegative = Math.max(value, 0);
+        counts.incrementAndGet(bucketOf(nonNegative));
+        count.incrementAndGet();
+        total.accumulateAndGet(nonNegative, LatencyHistogram::saturatedAdd);
+        updateMax(nonNegative);
+    }
+
+    /**
+     * Adds all the values recorded in another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            final long bucketCount = other.counts.get(i);
+            if (bucketCount != 0) counts.addAndGet(i, bucketCount);
+        }
+        count.addAndGet(other.count.get());
+        total.accumulateAndGet(other.total.get(), LatencyHistogram::saturatedAdd);
+        updateMax(other.max.get());
+    }
+
+    /**
+     * Both values are non-negative, so the only possible overflow is past {@link Long#MAX_VALUE}.
+     */
+    private static long saturatedAdd(final long a, final long b) {
+        try {
+            return Math.addExact(a, b);
+        } catch (ArithmeticException overflow) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void updateMax(final long candidate) {
+        long currentMax = max.get();
+        while (candidate > currentMax && !max.compareAndSet(currentMax, candidate)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if none have been
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if none have been; once their total exceeds {@link Long#MAX_VALUE} it
+     *         is taken to be {@link Long#MAX_VALUE}, so the mean is an underestimate rather than meaningless
+     */
+    public double mean() {
+        final long currentCount = count.get();
+        return currentCount == 0 ? 0 : (double) total.get() / currentCount;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value at or below which the given percentage of recorded values fall, or 0 if none have been recorded
+     */
+    public long percentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100; was " + percentile);
+        }
+        final long[] snapshot = new long[BUCKETS];
+        long snapshotCount = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            snapshotCount += snapshot[i];
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * snapshotCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max());
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count() + ", mean=" + (long) mean() + ", p50=" + percentile(50) + ", p90=" + percentile(90)
+                + ", p99=" + percentile(99) + ", p99.9=" + percentile(99.9) + ", max=" + max();
+    }
+
+    static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (magnitude - SUB_BUCKET_BITS);
+        return lowest + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+}
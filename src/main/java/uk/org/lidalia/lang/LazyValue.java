@@ -3,7 +3,9 @@ package uk.org.lidalia.lang;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.Objects.requireNonNull;
 import static uk.org.lidalia.lang.Uninterruptibles.getUninterruptibly;
 import static uk.org.lidalia.lang.Exceptions.throwUnchecked;
 
@@ -15,13 +17,26 @@ import static uk.org.lidalia.lang.Exceptions.throwUnchecked;
 public class LazyValue<T> implements Callable<T> {
 
     private final FutureTask<T> supplier;
+    private final LazyValueMetrics metrics;
+    private final AtomicInteger waiters = new AtomicInteger();
 
     /**
      * @param supplier contains the expression (as a Callable) that will create the result; this will be evaluated once
      *                 and only once
      */
     public LazyValue(final Callable<T> supplier) {
-        this.supplier = new FutureTask<>(supplier);
+        this(supplier, LazyValueMetrics.NONE);
+    }
+
+    /**
+     * @param supplier contains the expression (as a Callable) that will create the result; this will be evaluated once
+     *                 and only once
+     * @param metrics  notified of how long the evaluation took, whether it failed and which threads blocked waiting for it;
+     *                 pass {@link LazyValueMetrics#NONE} to disable instrumentation
+     */
+    public LazyValue(final Callable<T> supplier, final LazyValueMetrics metrics) {
+        this.metrics = requireNonNull(metrics);
+        this.supplier = new FutureTask<>(metrics == LazyValueMetrics.NONE ? requireNonNull(supplier) : timed(supplier, metrics));
     }
 
     /**
@@ -32,6 +47,9 @@ public class LazyValue<T> implements Callable<T> {
     @Override
     public T call() {
         supplier.run();
+        if (metrics != LazyValueMetrics.NONE && !supplier.isDone()) {
+            awaitEvaluation();
+        }
         try {
             return getUninterruptibly(supplier);
         } catch (ExecutionException e) {
@@ -39,6 +57,35 @@ public class LazyValue<T> implements Callable<T> {
         }
     }
 
+    private void awaitEvaluation() {
+        final int concurrentWaiters = waiters.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            getUninterruptibly(supplier);
+        } catch (ExecutionException e) {
+            // reported by the evaluating thread; rethrown by call()
+        } finally {
+            waiters.decrementAndGet();
+            metrics.waited(System.nanoTime() - start, concurrentWaiters);
+        }
+    }
+
+    private static <T> Callable<T> timed(final Callable<T> supplier, final LazyValueMetrics metrics) {
+        requireNonNull(supplier);
+        return () -> {
+            final long start = System.nanoTime();
+            final T result;
+            try {
+                result = supplier.call();
+            } catch (Exception | Error e) {
+                metrics.failed(System.nanoTime() - start, e);
+                throw e;
+            }
+            metrics.evaluated(System.nanoTime() - start);
+            return result;
+        };
+    }
+
     @Override
     public String toString() {
         if (supplier.isDone()) return call().toString();
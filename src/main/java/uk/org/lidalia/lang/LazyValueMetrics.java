@@ -0,0 +1,38 @@
+package uk.org.lidalia.lang;
+
+/**
+ * Receives instrumentation events from a {@link LazyValue}, allowing slow or heavily contended lazy values to be identified.
+ *
+ * All methods have empty default implementations so only the events of interest need be overridden. Implementations are
+ * called on the thread that experienced the event and must be thread safe.
+ */
+public interface LazyValueMetrics {
+
+    /**
+     * Records nothing; a {@link LazyValue} constructed with this instance does no instrumentation work at all.
+     */
+    LazyValueMetrics NONE = new LazyValueMetrics() {};
+
+    /**
+     * Called once, by the thread that evaluated the supplier, when it returned successfully.
+     *
+     * @param durationNanos how long the supplier took to return
+     */
+    default void evaluated(final long durationNanos) {}
+
+    /**
+     * Called once, by the thread that evaluated the supplier, when it threw.
+     *
+     * @param durationNanos how long the supplier took to throw
+     * @param failure what the supplier threw
+     */
+    default void failed(final long durationNanos, final Throwable failure) {}
+
+    /**
+     * Called by each thread that had to block because another thread was evaluating the supplier.
+     *
+     * @param waitNanos how long this thread was blocked for
+     * @param concurrentWaiters the number of threads blocked at the moment this thread started waiting, including itself
+     */
+    default void waited(final long waitNanos, final int concurrentWaiters) {}
+}
@@ -0,0 +1,244 @@
+package uk.org.lidalia.lang;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded pool of reusable objects, such as buffers, {@link StringBuilder}s or encoders, kept per {@link Thread} in a
+ * {@link ThreadLocal} so that acquiring and releasing them is uncontended.
+ *
+ * <pre>
+ *     ObjectPool&lt;StringBuilder&gt; builders = new ObjectPool&lt;&gt;(StringBuilder::new, builder -&gt; builder.setLength(0), 4);
+ *
+ *     try (ObjectPool.Handle&lt;StringBuilder&gt; handle = builders.acquire()) {
+ *         StringBuilder builder = handle.get();
+ *         ...
+ *     }
+ * </pre>
+ *
+ * An object may be released by a different {@link Thread} to the one that acquired it, in which case it is handed back to
+ * the acquiring {@link Thread}'s pool through a bounded queue. Objects that cannot be pooled because the pool is full are
+ * passed to the disposer and dropped, as are the pooled objects of {@link Thread}s that terminate and of pools that are
+ * reset.
+ *
+ * @param <T> the type of the pooled objects
+ */
+public class ObjectPool<T> {
+
+    private final Supplier<T> creator;
+    private final Consumer<? super T> recycler;
+    private final Consumer<? super T> disposer;
+    private final int maxPerThread;
+    private final ThreadLocal<Stack<T>> stacks;
+    /**
+     * Every stack created since the last reset whose {@link Thread} has not terminated; also guards their creation, so
+     * a reset disposes of every stack it makes unreachable.
+     */
+    private final Set<Stack<T>> live = new HashSet<>();
+    private final PerThreadCounter hits = new PerThreadCounter();
+    private final PerThreadCounter misses = new PerThreadCounter();
+
+    /**
+     * @param creator creates a new object when none is available in the calling {@link Thread}'s pool
+     * @param recycler restores an object to a reusable state when it is released
+     * @param maxPerThread the maximum number of objects held in each {@link Thread}'s pool
+     */
+    public ObjectPool(final Supplier<T> creator, final Consumer<? super T> recycler, final int maxPerThread) {
+        this(creator, recycler, object -> {}, maxPerThread);
+    }
+
+    /**
+     * @param creator creates a new object when none is available in the calling {@link Thread}'s pool
+     * @param recycler restores an object to a reusable state when it is released
+     * @param disposer releases any resources held by an object that is being dropped from the pool
+     * @param maxPerThread the maximum number of objects held in each {@link Thread}'s pool
+     */
+    public ObjectPool(
+            final Supplier<T> creator,
+            final Consumer<? super T> recycler,
+            final Consumer<? super T> disposer,
+            final int maxPerThread
+    ) {
+        if (maxPerThread < 1) throw new IllegalArgumentException("maxPerThread must be at least 1; was " + maxPerThread);
+        this.creator = requireNonNull(creator);
+        this.recycler = requireNonNull(recycler);
+        this.disposer = requireNonNull(disposer);
+        this.maxPerThread = maxPerThread;
+        this.stacks = new ThreadLocal<>(this::newStack, this::retire);
+    }
+
+    /**
+     * @return a handle on an object from the calling {@link Thread}'s pool, or on a newly created object if the pool is
+     *         empty; the handle must be released when the object is no longer in use
+     */
+    public Handle<T> acquire() {
+        Stack<T> stack = stacks.get();
+        if (stack.disposed) {
+            // created just before a reset, but only stored afterwards
+            stacks.remove();
+            stack = stacks.get();
+        }
+        final T pooled = stack.pop();
+        if (pooled != null) {
+            hits.increment();
+            return new Handle<>(pooled, stack);
+        } else {
+            misses.increment();
+            return new Handle<>(creator.get(), stack);
+        }
+    }
+
+    /**
+     * @return the number of times {@link #acquire()} was satisfied from a pool
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of times {@link #acquire()} had to create a new object
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Empties the pools of all {@link Thread}s, passing the objects they held to the disposer. Objects currently acquired
+     * are passed to the disposer, rather than pooled, when released.
+     */
+    public void reset() {
+        final Collection<Stack<T>> retired;
+        synchronized (live) {
+            stacks.reset();
+            retired = new ArrayList<>(live);
+            live.clear();
+        }
+        retired.forEach(Stack::dispose);
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectPool[hits=" + hits() + ", misses=" + misses() + "]";
+    }
+
+    private Stack<T> newStack() {
+        synchronized (live) {
+            final Stack<T> stack = new Stack<>(this);
+            live.add(stack);
+            return stack;
+        }
+    }
+
+    private void retire(final Stack<T> stack) {
+        synchronized (live) {
+            live.remove(stack);
+        }
+        stack.dispose();
+    }
+
+    /**
+     * An object acquired from an {@link ObjectPool}, which returns it to the pool when released. A new handle is made for
+     * every acquisition, so a released handle can never reach an object that has since been acquired again.
+     *
+     * @param <T> the type of the pooled object
+     */
+    public static final class Handle<T> implements AutoCloseable {
+
+        private final T object;
+        private final Stack<T> stack;
+        private final AtomicBoolean acquired = new AtomicBoolean(true);
+
+        private Handle(final T object, final Stack<T> stack) {
+            this.object = requireNonNull(object);
+            this.stack = stack;
+        }
+
+        /**
+         * @return the pooled object
+         * @throws IllegalStateException if the handle has been released
+         */
+        public T get() {
+            if (!acquired.get()) throw new IllegalStateException("Handle has been released");
+            return object;
+        }
+
+        /**
+         * Recycles the object and returns it to the pool of the {@link Thread} that acquired it; it must not be used
+         * afterwards.
+         *
+         * @throws IllegalStateException if the handle has already been released
+         */
+        public void release() {
+            if (!acquired.compareAndSet(true, false)) throw new IllegalStateException("Handle has already been released");
+            stack.pool.recycler.accept(object);
+            stack.push(object);
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    /**
+     * Locked so that a reset can dispose of its contents from another {@link Thread}; otherwise only ever locked by its
+     * owning {@link Thread}, and by {@link Thread}s releasing objects it acquired.
+     */
+    private static final class Stack<T> {
+
+        private final ObjectPool<T> pool;
+        private final Deque<T> local = new ArrayDeque<>();
+        private final BlockingQueue<T> handoff;
+        private volatile boolean disposed = false;
+
+        Stack(final ObjectPool<T> pool) {
+            this.pool = pool;
+            this.handoff = new ArrayBlockingQueue<>(pool.maxPerThread);
+        }
+
+        synchronized T pop() {
+            final T object = local.pollLast();
+            return object != null ? object : handoff.poll();
+        }
+
+        void push(final T object) {
+            // getIfSet, so that releasing on a Thread with no stack of its own does not create one
+            final boolean owner = pool.stacks.getIfSet() == this;
+            final boolean pooled;
+            synchronized (this) {
+                if (disposed) {
+                    pooled = false;
+                } else if (owner) {
+                    pooled = local.size() < pool.maxPerThread && local.add(object);
+                } else {
+                    pooled = handoff.offer(object);
+                }
+            }
+            if (!pooled) {
+                pool.disposer.accept(object);
+            }
+        }
+
+        void dispose() {
+            final Collection<T> contents = new ArrayDeque<>();
+            synchronized (this) {
+                disposed = true;
+                contents.addAll(local);
+                handoff.drainTo(contents);
+                local.clear();
+            }
+            contents.forEach(pool.disposer);
+        }
+    }
+}
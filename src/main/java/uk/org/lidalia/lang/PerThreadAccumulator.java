@@ -0,0 +1,83 @@
+package uk.org.lidalia.lang;
+
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Accumulates arbitrary mergeable state without contention by giving every {@link Thread} its own cell, held in a
+ * {@link ThreadLocal}, and merging the cells on demand.
+ *
+ * Each {@link Thread} updates only the cell returned to it by {@link #local()}; {@link #snapshot()} merges all the cells,
+ * along with those of {@link Thread}s that have since terminated, into a new cell. Updates made concurrently with a
+ * snapshot may or may not be reflected in it, so cells must tolerate being read by another {@link Thread} while they are
+ * updated - typically by using volatile fields written only by their owning {@link Thread}.
+ *
+ * <pre>
+ *     PerThreadAccumulator&lt;LatencyHistogram&gt; latencies = new PerThreadAccumulator&lt;&gt;(LatencyHistogram::new, LatencyHistogram::add);
+ *     latencies.local().record(duration);
+ *     ...
+ *     long p99 = latencies.snapshot().percentile(99);
+ * </pre>
+ *
+ * @param <S> the type of the per {@link Thread} state
+ */
+public class PerThreadAccumulator<S> {
+
+    private final Supplier<S> cellCreator;
+    private final BiConsumer<? super S, ? super S> merger;
+    private final ThreadLocal<S> cells;
+    private S terminated;
+
+    /**
+     * @param cellCreator creates an empty cell
+     * @param merger merges its second argument into its first
+     */
+    public PerThreadAccumulator(final Supplier<S> cellCreator, final BiConsumer<? super S, ? super S> merger) {
+        this.cellCreator = requireNonNull(cellCreator);
+        this.merger = requireNonNull(merger);
+        this.terminated = cellCreator.get();
+        this.cells = new ThreadLocal<>(cellCreator, this::retire);
+    }
+
+    /**
+     * @return the calling {@link Thread}'s cell; it must not be passed to or updated by any other {@link Thread}
+     */
+    public S local() {
+        return cells.get();
+    }
+
+    /**
+     * @return a new cell holding the merged state of all cells
+     */
+    public S snapshot() {
+        // cells are removed and retired holding the monitor of cells, so while it is held every cell is either returned
+        // by allValues or already merged into terminated, and none is left out of the snapshot or merged twice
+        synchronized (cells) {
+            final S result = cellCreator.get();
+            for (final S cell : cells.allValues()) {
+                merger.accept(result, cell);
+            }
+            merger.accept(result, terminated);
+            return result;
+        }
+    }
+
+    /**
+     * Discards the state of all cells. Updates made concurrently with a reset may be lost.
+     */
+    public void reset() {
+        synchronized (cells) {
+            terminated = cellCreator.get();
+            cells.reset();
+        }
+    }
+
+    /**
+     * Called holding the monitor of cells.
+     */
+    private void retire(final S cell) {
+        merger.accept(terminated, cell);
+    }
+}
@@ -0,0 +1,61 @@
+package uk.org.lidalia.lang;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A counter that {@link Thread}s can update without contending with one another, in the manner of
+ * {@link java.util.concurrent.atomic.LongAdder}, built on {@link PerThreadAccumulator}.
+ *
+ * Each {@link Thread} adds to its own cell with an ordered write rather than an atomic read-modify-write instruction, so
+ * updates are cheap even when many {@link Thread}s update the same counter; {@link #sum()} is proportionately more
+ * expensive.
+ */
+public class PerThreadCounter {
+
+    private final PerThreadAccumulator<Cell> accumulator = new PerThreadAccumulator<>(Cell::new, Cell::add);
+
+    /**
+     * @param amount the amount to add to the counter
+     */
+    public void add(final long amount) {
+        accumulator.local().add(amount);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * @return the sum of all additions; additions made concurrently may or may not be included
+     */
+    public long sum() {
+        return accumulator.snapshot().value;
+    }
+
+    /**
+     * Resets the counter to zero. Additions made concurrently may be lost.
+     */
+    public void reset() {
+        accumulator.reset();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    private static final class Cell {
+
+        private static final AtomicLongFieldUpdater<Cell> VALUE = AtomicLongFieldUpdater.newUpdater(Cell.class, "value");
+
+        private volatile long value;
+
+        void add(final long amount) {
+            VALUE.lazySet(this, value + amount);
+        }
+
+        void add(final Cell other) {
+            add(other.value);
+        }
+    }
+}
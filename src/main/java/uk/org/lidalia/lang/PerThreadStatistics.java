@@ -0,0 +1,119 @@
+package uk.org.lidalia.lang;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Count, sum, minimum and maximum of recorded long values, which {@link Thread}s can record without contending with one
+ * another; built on {@link PerThreadAccumulator}.
+ */
+public class PerThreadStatistics {
+
+    private final PerThreadAccumulator<Cell> accumulator = new PerThreadAccumulator<>(Cell::new, Cell::add);
+
+    /**
+     * @param value the value to record
+     */
+    public void record(final long value) {
+        accumulator.local().record(value);
+    }
+
+    /**
+     * @return the statistics of all values recorded; values recorded concurrently may or may not be included
+     */
+    public Snapshot snapshot() {
+        final Cell merged = accumulator.snapshot();
+        return new Snapshot(merged.count, merged.sum, merged.min, merged.max);
+    }
+
+    /**
+     * Discards all recorded values. Values recorded concurrently may be lost.
+     */
+    public void reset() {
+        accumulator.reset();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Immutable statistics of the values recorded at a point in time.
+     */
+    public static final class Snapshot {
+
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(final long count, final long sum, final long min, final long max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        /**
+         * @return the smallest value recorded, or {@link Long#MAX_VALUE} if none have been
+         */
+        public long min() {
+            return min;
+        }
+
+        /**
+         * @return the largest value recorded, or {@link Long#MIN_VALUE} if none have been
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * @return the mean of the values recorded, or 0 if none have been
+         */
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max + ", mean=" + mean();
+        }
+    }
+
+    private static final class Cell {
+
+        private static final AtomicLongFieldUpdater<Cell> COUNT = AtomicLongFieldUpdater.newUpdater(Cell.class, "count");
+        private static final AtomicLongFieldUpdater<Cell> SUM = AtomicLongFieldUpdater.newUpdater(Cell.class, "sum");
+        private static final AtomicLongFieldUpdater<Cell> MIN = AtomicLongFieldUpdater.newUpdater(Cell.class, "min");
+        private static final AtomicLongFieldUpdater<Cell> MAX = AtomicLongFieldUpdater.newUpdater(Cell.class, "max");
+
+        private volatile long count = 0;
+        private volatile long sum = 0;
+        private volatile long min = Long.MAX_VALUE;
+        private volatile long max = Long.MIN_VALUE;
+
+        void record(final long value) {
+            add(1, value, value, value);
+        }
+
+        void add(final Cell other) {
+            add(other.count, other.sum, other.min, other.max);
+        }
+
+        private void add(final long otherCount, final long otherSum, final long otherMin, final long otherMax) {
+            COUNT.lazySet(this, count + otherCount);
+            SUM.lazySet(this, sum + otherSum);
+            if (otherMin < min) MIN.lazySet(this, otherMin);
+            if (otherMax > max) MAX.lazySet(this, otherMax);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package uk.org.lidalia.lang;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link Bytes} made of other Bytes linked together without copying, flattened into a single array only when contiguous
+ * storage is needed.
+ */
+final class RopeBytes extends Bytes {
+
+    /**
+     * Concatenations no larger than this are copied into a single array rather than linked, and {@link BytesBuilder}
+     * copies appends no larger than this rather than linking them, to keep ropes from filling up with fragments that cost
+     * more to link than to copy.
+     */
+    static final int LINK_THRESHOLD = 128;
+
+    static Bytes of(final List<? extends Bytes> toConcatenate) {
+        final List<Bytes> parts = new ArrayList<>(toConcatenate.size());
+        long size = 0;
+        for (Bytes bytes : toConcatenate) {
+            if (bytes instanceof RopeBytes) {
+                parts.addAll(Arrays.asList(((RopeBytes) bytes).parts));
+            } else if (!bytes.isEmpty()) {
+                parts.add(bytes);
+            }
+            size += bytes.size();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot concatenate " + size + " bytes; at most " + Integer.MAX_VALUE
+                    + " are allowed");
+        }
+        if (parts.isEmpty()) return EMPTY;
+        if (parts.size() == 1) return parts.get(0);
+        if (size <= LINK_THRESHOLD) return copy(parts, (int) size);
+        return new RopeBytes(parts.toArray(new Bytes[parts.size()]));
+    }
+
+    private static Bytes copy(final List<Bytes> parts, final int size) {
+        final byte[] copy = new byte[size];
+        int position = 0;
+        for (Bytes part : parts) {
+            part.copyTo(copy, position);
+            position += part.size();
+        }
+        return new HeapBytes(copy, 0, size);
+    }
+
+    /**
+     * Each non empty, and none a RopeBytes. Never shared with another rope, so that a rope keeps reachable only the
+     * parts it is made of.
+     */
+    private final Bytes[] parts;
+    /**
+     * The index of the first byte of each part, followed by the total size.
+     */
+    private final int[] starts;
+    private volatile Bytes flattened;
+
+    private RopeBytes(final Bytes[] parts) {
+        this.parts = parts;
+        this.starts = new int[parts.length + 1];
+        for (int i = 0; i < parts.length; i++) {
+            starts[i + 1] = starts[i] + parts[i].size();
+        }
+    }
+
+    @Override
+    public int size() {
+        return starts[parts.length];
+    }
+
+    @Override
+    byte at(final int index) {
+        final int part = partContaining(index);
+        return parts[part].at(index - starts[part]);
+    }
+
+    @Override
+    short shortAt(final int index, final ByteOrder order) {
+        final int part = partContaining(index);
+        return index + Short.BYTES <= starts[part + 1]
+                ? parts[part].shortAt(index - starts[part], order)
+                : super.shortAt(index, order);
+    }
+
+    @Override
+    int intAt(final int index, final ByteOrder order) {
+        final int part = partContaining(index);
+        return index + Integer.BYTES <= starts[part + 1]
+                ? parts[part].intAt(index - starts[part], order)
+                : super.intAt(index, order);
+    }
+
+    @Override
+    long longAt(final int index, final ByteOrder order) {
+        final int part = partContaining(index);
+        return index + Long.BYTES <= starts[part + 1]
+                ? parts[part].longAt(index - starts[part], order)
+                : super.longAt(index, order);
+    }
+
+    @Override
+    Bytes sliceOf(final int fromIndex, final int toIndex) {
+        final int first = partContaining(fromIndex);
+        final int last = partContaining(toIndex - 1);
+        if (first == last) {
+            return parts[first].slice(fromIndex - starts[first], toIndex - starts[first]);
+        }
+        final List<Bytes> sliced = new ArrayList<>(last - first + 1);
+        sliced.add(parts[first].slice(fromIndex - starts[first], parts[first].size()));
+        sliced.addAll(Arrays.asList(parts).subList(first + 1, last));
+        sliced.add(parts[last].slice(0, toIndex - starts[last]));
+        return of(sliced);
+    }
+
+    @Override
+    List<ByteBuffer> chunks() {
+        final List<ByteBuffer> chunks = new ArrayList<>(parts.length);
+        for (Bytes part : parts) {
+            chunks.addAll(part.chunks());
+        }
+        return chunks;
+    }
+
+    @Override
+    List<ByteBuffer> storage() {
+        final List<ByteBuffer> storage = new ArrayList<>(parts.length);
+        for (Bytes part : parts) {
+            storage.addAll(part.storage());
+        }
+        return storage;
+    }
+
+    @Override
+    public ByteBuffer asReadOnlyByteBuffer() {
+        return flatten().asReadOnlyByteBuffer();
+    }
+
+    @Override
+    public Bytes flatten() {
+        Bytes result = flattened;
+        if (result == null) {
+            result = new HeapBytes(array(), 0, size());
+            flattened = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String string(final Charset charset) {
+        final Bytes contiguous = flattened;
+        return contiguous != null ? contiguous.string(charset) : ByteStrings.string(array(), 0, size(), charset);
+    }
+
+    private int partContaining(final int index) {
+        final int found = Arrays.binarySearch(starts, 0, parts.length, index);
+        return found >= 0 ? found : -found - 2;
+    }
+}
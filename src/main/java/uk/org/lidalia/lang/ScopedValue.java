@@ -0,0 +1,185 @@
+package uk.org.lidalia.lang;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A value bound for the dynamic extent of a {@link Runnable} or {@link Callable}, readable by any code that it calls on the
+ * same {@link Thread} and unbound automatically when it returns; an alternative to {@link ThreadLocal} for passing context
+ * down a call stack. Mirrors the API of the JDK's own ScopedValue, but does not permit null.
+ *
+ * <pre>
+ *     static final ScopedValue&lt;User&gt; CURRENT_USER = ScopedValue.newInstance();
+ *
+ *     ScopedValue.where(CURRENT_USER, user).run(() -&gt; handle(request));
+ *
+ *     void handle(Request request) {
+ *         User user = CURRENT_USER.get();
+ *         ...
+ *     }
+ * </pre>
+ *
+ * A binding cannot be changed, only shadowed by a nested binding, so there is nothing to remove or reset. Bindings are held
+ * in a single {@link java.lang.ThreadLocal} shared by all ScopedValues, and only while a binding is in scope: a
+ * {@link Thread} outside any binding has no entry at all, and so no {@link ClassLoader} leak is possible once the
+ * outermost binding returns.
+ *
+ * @param <T> the type of the bound value
+ */
+public final class ScopedValue<T> {
+
+    private static final java.lang.ThreadLocal<Frame> FRAMES = new java.lang.ThreadLocal<>();
+
+    /**
+     * @param <T> the type of the bound value
+     * @return a new ScopedValue, unbound on all {@link Thread}s
+     */
+    public static <T> ScopedValue<T> newInstance() {
+        return new ScopedValue<>();
+    }
+
+    /**
+     * @param key the ScopedValue to bind
+     * @param value the value to bind it to
+     * @param <T> the type of the bound value
+     * @return a carrier of the binding, on which {@link Carrier#run(Runnable)} or {@link Carrier#call(Callable)} can be
+     *         called to do work with the binding in scope
+     */
+    public static <T> Carrier where(final ScopedValue<T> key, final T value) {
+        return new Carrier(requireNonNull(key), requireNonNull(value), null);
+    }
+
+    private ScopedValue() {
+    }
+
+    /**
+     * @return the value bound to this ScopedValue by the innermost binding in scope on the calling {@link Thread}
+     * @throws NoSuchElementException if this ScopedValue is not bound on the calling {@link Thread}
+     */
+    public T get() {
+        final T value = find();
+        if (value == null) throw new NoSuchElementException("ScopedValue not bound");
+        return value;
+    }
+
+    /**
+     * @return true if this ScopedValue is bound on the calling {@link Thread}
+     */
+    public boolean isBound() {
+        return find() != null;
+    }
+
+    /**
+     * @param other the value to return if this ScopedValue is not bound
+     * @return the value bound to this ScopedValue on the calling {@link Thread}, or other if it is not bound
+     */
+    public T orElse(final T other) {
+        final T value = find();
+        return value != null ? value : other;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T find() {
+        for (Frame frame = FRAMES.get(); frame != null; frame = frame.previous) {
+            for (Carrier binding = frame.bindings; binding != null; binding = binding.previous) {
+                if (binding.key == this) return (T) binding.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An immutable set of bindings of ScopedValues to values, which can be brought into scope for the duration of some work.
+     */
+    public static final class Carrier {
+
+        private final ScopedValue<?> key;
+        private final Object value;
+        private final Carrier previous;
+
+        private Carrier(final ScopedValue<?> key, final Object value, final Carrier previous) {
+            this.key = key;
+            this.value = value;
+            this.previous = previous;
+        }
+
+        /**
+         * @param key the ScopedValue to bind
+         * @param value the value to bind it to
+         * @param <T> the type of the bound value
+         * @return a new carrier with this carrier's bindings plus the new one, which takes precedence if key is already bound
+         */
+        public <T> Carrier where(final ScopedValue<T> key, final T value) {
+            return new Carrier(requireNonNull(key), requireNonNull(value), this);
+        }
+
+        /**
+         * @param key a ScopedValue
+         * @param <T> the type of the bound value
+         * @return the value this carrier binds key to
+         * @throws NoSuchElementException if this carrier does not bind key
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(final ScopedValue<T> key) {
+            for (Carrier binding = this; binding != null; binding = binding.previous) {
+                if (binding.key == key) return (T) binding.value;
+            }
+            throw new NoSuchElementException("ScopedValue not bound by this carrier");
+        }
+
+        /**
+         * @param op the work to run on the calling {@link Thread} with this carrier's bindings in scope
+         */
+        public void run(final Runnable op) {
+            final Frame previous = enter();
+            try {
+                op.run();
+            } finally {
+                exit(previous);
+            }
+        }
+
+        /**
+         * @param op the work to call on the calling {@link Thread} with this carrier's bindings in scope
+         * @param <R> the type of the result of the work
+         * @return the result of the work
+         * @throws Exception if the work does
+         */
+        @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+        public <R> R call(final Callable<R> op) throws Exception {
+            final Frame previous = enter();
+            try {
+                return op.call();
+            } finally {
+                exit(previous);
+            }
+        }
+
+        private Frame enter() {
+            final Frame previous = FRAMES.get();
+            FRAMES.set(new Frame(this, previous));
+            return previous;
+        }
+
+        private static void exit(final Frame previous) {
+            if (previous == null) {
+                FRAMES.remove();
+            } else {
+                FRAMES.set(previous);
+            }
+        }
+    }
+
+    private static final class Frame {
+
+        private final Carrier bindings;
+        private final Frame previous;
+
+        Frame(final Carrier bindings, final Frame previous) {
+            this.bindings = bindings;
+            this.previous = previous;
+        }
+    }
+}
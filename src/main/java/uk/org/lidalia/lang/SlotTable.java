@@ -0,0 +1,72 @@
+package uk.org.lidalia.lang;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A growable, thread safe array of references indexed by small non-negative ints.
+ *
+ * Storage is split into fixed size segments which are never moved once created, so growing the table never races with
+ * writes to existing slots; only the small array of segments is copied, under a lock. Reads and writes take no locks.
+ *
+ * @param <E> the type of the elements
+ */
+final class SlotTable<E> {
+
+    private static final int SEGMENT_SHIFT = 5;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private volatile AtomicReferenceArray<AtomicReferenceArray<E>> segments = new AtomicReferenceArray<>(1);
+
+    E get(final int index) {
+        final AtomicReferenceArray<AtomicReferenceArray<E>> current = segments;
+        final int segmentIndex = index >>> SEGMENT_SHIFT;
+        if (segmentIndex >= current.length()) return null;
+        final AtomicReferenceArray<E> segment = current.get(segmentIndex);
+        return segment == null ? null : segment.get(index & SEGMENT_MASK);
+    }
+
+    void set(final int index, final E element) {
+        segmentFor(index).set(index & SEGMENT_MASK, element);
+    }
+
+    boolean compareAndSet(final int index, final E expected, final E element) {
+        return segmentFor(index).compareAndSet(index & SEGMENT_MASK, expected, element);
+    }
+
+    /**
+     * @return one more than the highest index that could currently hold an element
+     */
+    int capacity() {
+        return segments.length() << SEGMENT_SHIFT;
+    }
+
+    private AtomicReferenceArray<E> segmentFor(final int index) {
+        final int segmentIndex = index >>> SEGMENT_SHIFT;
+        final AtomicReferenceArray<AtomicReferenceArray<E>> current = segments;
+        if (segmentIndex < current.length()) {
+            final AtomicReferenceArray<E> segment = current.get(segmentIndex);
+            if (segment != null) return segment;
+        }
+        return createSegment(segmentIndex);
+    }
+
+    private synchronized AtomicReferenceArray<E> createSegment(final int segmentIndex) {
+        AtomicReferenceArray<AtomicReferenceArray<E>> current = segments;
+        if (segmentIndex >= current.length()) {
+            final AtomicReferenceArray<AtomicReferenceArray<E>> grown =
+                    new AtomicReferenceArray<>(Math.max(segmentIndex + 1, current.length() * 2));
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            segments = grown;
+            current = grown;
+        }
+        AtomicReferenceArray<E> segment = current.get(segmentIndex);
+        if (segment == null) {
+            segment = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            current.set(segmentIndex, segment);
+        }
+        return segment;
+    }
+}
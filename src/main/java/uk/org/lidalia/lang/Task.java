@@ -1,7 +1,19 @@
 package uk.org.lidalia.lang;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 
+import static java.util.Arrays.asList;
+import static java.util.Objects.requireNonNull;
 import static uk.org.lidalia.lang.Exceptions.throwUnchecked;
 
 /**
@@ -55,4 +67,177 @@ public abstract class Task implements Runnable, Callable<Void> {
         };
     }
 
+    /**
+     * @param tasks the tasks to run
+     * @return a task that runs all of the given tasks concurrently on the {@link ForkJoinPool#commonPool() common pool}
+     * @see #parallel(Executor, Collection)
+     */
+    public static Task parallel(final Task... tasks) {
+        return parallel(asList(tasks));
+    }
+
+    /**
+     * @param tasks the tasks to run
+     * @return a task that runs all of the given tasks concurrently on the {@link ForkJoinPool#commonPool() common pool}
+     * @see #parallel(Executor, Collection)
+     */
+    public static Task parallel(final Collection<? extends Task> tasks) {
+        return parallel(ForkJoinPool.commonPool(), tasks);
+    }
+
+    /**
+     * Creates a task that, when performed, submits all of the given tasks to the executor and blocks until they have all
+     * completed. As soon as any of them fails the rest are cancelled (and interrupted if already running) and the first
+     * failure is thrown, with any other failures that had already occurred added to it as suppressed exceptions.
+     *
+     * Any {@link Executor} may be used; to run blocking I/O tasks on virtual threads on a JDK that supports them pass
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}.
+     *
+     * @param executor the executor to run the tasks on
+     * @param tasks the tasks to run
+     * @return a task that runs all of the given tasks concurrently on the executor
+     */
+    public static Task parallel(final Executor executor, final Collection<? extends Task> tasks) {
+        requireNonNull(executor);
+        final List<Task> toRun = copyOf(tasks);
+        return new Task() {
+            @Override
+            public void perform() throws Exception {
+                performAll(executor, toRun);
+            }
+        };
+    }
+
+    /**
+     * @param tasks the tasks to run
+     * @return a task that performs each of the given tasks in turn on the calling thread, stopping at the first failure
+     */
+    public static Task sequence(final Task... tasks) {
+        return sequence(asList(tasks));
+    }
+
+    /**
+     * @param tasks the tasks to run
+     * @return a task that performs each of the given tasks in turn on the calling thread, stopping at the first failure
+     */
+    public static Task sequence(final Collection<? extends Task> tasks) {
+        final List<Task> toRun = copyOf(tasks);
+        return new Task() {
+            @Override
+            public void perform() throws Exception {
+                for (final Task task : toRun) {
+                    task.perform();
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs all of the given tasks concurrently on the {@link ForkJoinPool#commonPool() common pool}, blocking until
+     * they have completed.
+     *
+     * @param tasks the tasks to run
+     * @throws Exception the first failure; see {@link #parallel(Executor, Collection)}
+     */
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    public static void runAll(final Collection<? extends Task> tasks) throws Exception {
+        parallel(tasks).perform();
+    }
+
+    /**
+     * Runs all of the given tasks concurrently on the executor, blocking until they have completed.
+     *
+     * @param executor the executor to run the tasks on
+     * @param tasks the tasks to run
+     * @throws Exception the first failure; see {@link #parallel(Executor, Collection)}
+     */
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    public static void runAll(final Executor executor, final Collection<? extends Task> tasks) throws Exception {
+        parallel(executor, tasks).perform();
+    }
+
+    private static List<Task> copyOf(final Collection<? extends Task> tasks) {
+        final List<Task> copy = new ArrayList<>(tasks);
+        copy.forEach(task -> requireNonNull(task));
+        return copy;
+    }
+
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    private static void performAll(final Executor executor, final List<Task> tasks) throws Exception {
+        final BlockingQueue<Future<Void>> completed = new LinkedBlockingQueue<>();
+        final List<Future<Void>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (final Task task : tasks) {
+                final FutureTask<Void> future = new FutureTask<Void>(task) {
+                    @Override
+                    protected void done() {
+                        completed.add(this);
+                    }
+                };
+                futures.add(future);
+                executor.execute(future);
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    take(completed).get();
+                } catch (ExecutionException e) {
+                    throwUnchecked(failure(e.getCause(), futures));
+                }
+            }
+        } catch (Exception | Error e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+    }
+
+    /**
+     * Waits as a {@link ForkJoinPool.ManagedBlocker}, so that when the caller is itself a worker in a
+     * {@link ForkJoinPool}, such as the common pool, the pool can add a worker to run the tasks being waited for rather
+     * than deadlock when tasks that run tasks in parallel are nested.
+     */
+    private static Future<Void> take(final BlockingQueue<Future<Void>> completed) throws InterruptedException {
+        final CompletionBlocker blocker = new CompletionBlocker(completed);
+        ForkJoinPool.managedBlock(blocker);
+        return blocker.taken;
+    }
+
+    private static final class CompletionBlocker implements ForkJoinPool.ManagedBlocker {
+
+        private final BlockingQueue<Future<Void>> completed;
+        private Future<Void> taken = null;
+
+        CompletionBlocker(final BlockingQueue<Future<Void>> completed) {
+            this.completed = completed;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (taken == null) taken = completed.take();
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (taken == null) taken = completed.poll();
+            return taken != null;
+        }
+    }
+
+    private static Throwable failure(final Throwable first, final List<Future<Void>> futures) {
+        for (final Future<Void> future : futures) {
+            future.cancel(true);
+        }
+        for (final Future<Void> future : futures) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() != first) first.addSuppressed(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return first;
+    }
 }
@@ -0,0 +1,239 @@
+package uk.org.lidalia.lang;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static java.util.Objects.requireNonNull;
+import static uk.org.lidalia.lang.Exceptions.throwUnchecked;
+
+/**
+ * A {@link Task} composed of other tasks with declared prerequisites, forming a directed acyclic graph.
+ *
+ * When performed every task is submitted to the executor as soon as all of its prerequisites have completed, so
+ * independent branches of the graph run concurrently. If a task fails none of the tasks that depend on it, directly or
+ * indirectly, are run; unrelated branches run to completion. Once nothing more can run the first failure is thrown with any
+ * other failures added to it as suppressed exceptions.
+ *
+ * Tasks are identified by instance; a TaskGraph may be performed more than once but should not be modified while it is
+ * being performed.
+ */
+public class TaskGraph extends Task {
+
+    private final Executor executor;
+    private final Map<Task, Set<Task>> prerequisites = new LinkedHashMap<>();
+
+    /**
+     * Creates a graph that runs its tasks on the {@link ForkJoinPool#commonPool() common pool}.
+     */
+    public TaskGraph() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor runs the tasks in the graph
+     */
+    public TaskGraph(final Executor executor) {
+        this.executor = requireNonNull(executor);
+    }
+
+    /**
+     * Adds a task to the graph, along with any of its prerequisites not already in the graph. Adding a task already in the
+     * graph adds to its prerequisites.
+     *
+     * @param task the task to add
+     * @param taskPrerequisites tasks that must complete successfully before task is run
+     * @return this graph
+     * @throws IllegalArgumentException if the new prerequisites would introduce a cycle
+     */
+    public TaskGraph add(final Task task, final Task... taskPrerequisites) {
+        requireNonNull(task);
+        for (final Task prerequisite : asList(taskPrerequisites)) {
+            if (prerequisite == task || dependsOn(requireNonNull(prerequisite), task)) {
+                throw new IllegalArgumentException(task + " cannot depend on " + prerequisite + "; it would create a cycle");
+            }
+        }
+        final Set<Task> existing = prerequisites.computeIfAbsent(task, key -> identitySet());
+        for (final Task prerequisite : taskPrerequisites) {
+            prerequisites.computeIfAbsent(prerequisite, key -> identitySet());
+            existing.add(prerequisite);
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of tasks in the graph
+     */
+    public int size() {
+        return prerequisites.size();
+    }
+
+    @Override
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    public void perform() throws Exception {
+        final Map<Task, Node> nodes = new IdentityHashMap<>();
+        for (final Task task : prerequisites.keySet()) {
+            nodes.put(task, new Node(task));
+        }
+        for (final Map.Entry<Task, Set<Task>> entry : prerequisites.entrySet()) {
+            final Node node = nodes.get(entry.getKey());
+            node.remainingPrerequisites.set(entry.getValue().size());
+            for (final Task prerequisite : entry.getValue()) {
+                nodes.get(prerequisite).dependents.add(node);
+            }
+        }
+
+        final List<Node> roots = new ArrayList<>();
+        for (final Node node : nodes.values()) {
+            if (node.remainingPrerequisites.get() == 0) {
+                roots.add(node);
+            }
+        }
+        final Run run = new Run(nodes.size());
+        roots.forEach(run::submit);
+        run.await();
+    }
+
+    private boolean dependsOn(final Task task, final Task possiblePrerequisite) {
+        final Deque<Task> toVisit = new ArrayDeque<>();
+        final Set<Task> visited = identitySet();
+        toVisit.push(task);
+        while (!toVisit.isEmpty()) {
+            final Task current = toVisit.pop();
+            if (current == possiblePrerequisite) return true;
+            if (visited.add(current)) {
+                toVisit.addAll(prerequisites.getOrDefault(current, Collections.emptySet()));
+            }
+        }
+        return false;
+    }
+
+    private static Set<Task> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static class Node {
+
+        private final Task task;
+        private final List<Node> dependents = new ArrayList<>();
+        private final AtomicInteger remainingPrerequisites = new AtomicInteger();
+        private volatile boolean prerequisiteFailed = false;
+
+        Node(final Task task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * Waits for the graph as a {@link ForkJoinPool.ManagedBlocker}, so that a graph performed on a worker in a
+     * {@link ForkJoinPool}, such as a task in another graph, lets the pool add a worker to run its tasks rather than
+     * deadlock.
+     */
+    private class Run implements ForkJoinPool.ManagedBlocker {
+
+        private final CountDownLatch finished;
+        private final List<Throwable> failures = new ArrayList<>();
+        private final Queue<Node> toSubmit = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger submitting = new AtomicInteger();
+
+        Run(final int size) {
+            this.finished = new CountDownLatch(size);
+        }
+
+        /**
+         * Nodes are handed to the executor from a single drain loop, so that an executor that runs tasks on the calling
+         * thread works through a long chain of dependents iteratively rather than recursively.
+         */
+        void submit(final Node node) {
+            toSubmit.add(node);
+            if (submitting.getAndIncrement() != 0) return;
+            do {
+                final Node next = toSubmit.poll();
+                try {
+                    executor.execute(() -> execute(next));
+                } catch (RuntimeException e) {
+                    completed(next, e);
+                }
+            } while (submitting.decrementAndGet() != 0);
+        }
+
+        private void execute(final Node node) {
+            try {
+                node.task.perform();
+            } catch (Exception | Error e) {
+                completed(node, e);
+                return;
+            }
+            completed(node, null);
+        }
+
+        private void completed(final Node node, final Throwable failure) {
+            if (failure != null) {
+                synchronized (failures) {
+                    failures.add(failure);
+                }
+            }
+            final Deque<Node> skipped = new ArrayDeque<>();
+            release(node, failure == null && !node.prerequisiteFailed, skipped);
+            while (!skipped.isEmpty()) {
+                release(skipped.pop(), false, skipped);
+            }
+        }
+
+        /**
+         * Counts node as complete for each of its dependents, submitting those now ready to run and adding to skipped
+         * those that never will.
+         */
+        private void release(final Node node, final boolean succeeded, final Deque<Node> skipped) {
+            for (final Node dependent : node.dependents) {
+                if (!succeeded) {
+                    dependent.prerequisiteFailed = true;
+                }
+                if (dependent.remainingPrerequisites.decrementAndGet() == 0) {
+                    if (dependent.prerequisiteFailed) {
+                        skipped.push(dependent);
+                    } else {
+                        submit(dependent);
+                    }
+                }
+            }
+            finished.countDown();
+        }
+
+        @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+        void await() throws Exception {
+            ForkJoinPool.managedBlock(this);
+            synchronized (failures) {
+                if (!failures.isEmpty()) {
+                    final Throwable first = failures.get(0);
+                    failures.subList(1, failures.size()).forEach(first::addSuppressed);
+                    throwUnchecked(first);
+                }
+            }
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            finished.await();
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return finished.getCount() == 0;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package uk.org.lidalia.lang;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Records how long {@link Task}s take to perform and how they fail, aggregated by name.
+ *
+ * <pre>
+ *     TaskLatencies latencies = new TaskLatencies();
+ *     Task task = latencies.timed("cache-refresh", refreshCache);
+ *     ...
+ *     long p99 = latencies.statistics("cache-refresh").latencies().percentile(99);
+ * </pre>
+ */
+public final class TaskLatencies {
+
+    private final ConcurrentMap<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * @param name the name to aggregate the task's latencies under; any number of tasks may share a name
+     * @param task the task to time
+     * @return a task that performs the given task, recording the time {@link Task#perform()} took in nanoseconds and
+     *         the type of any exception it threw
+     */
+    public Task timed(final String name, final Task task) {
+        return new TimedTask(requireNonNull(task), statistics(name));
+    }
+
+    /**
+     * @param name the name latencies were aggregated under
+     * @return the statistics for the name, which will be empty if no task with that name has been performed
+     */
+    public Statistics statistics(final String name) {
+        final Statistics existing = statistics.get(requireNonNull(name));
+        return existing != null ? existing : statistics.computeIfAbsent(name, Statistics::new);
+    }
+
+    /**
+     * @return the statistics for every name, keyed by name
+     */
+    public Map<String, Statistics> all() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    @Override
+    public String toString() {
+        return statistics.values().toString();
+    }
+
+    /**
+     * The latencies and failures of all tasks performed under a name.
+     */
+    public static final class Statistics {
+
+        private final String name;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        /**
+         * Keyed by class name rather than class, so that recording an exception does not keep its class, and so its
+         * {@link ClassLoader}, reachable for as long as these statistics are.
+         */
+        private final ConcurrentMap<String, AtomicLong> failures = new ConcurrentHashMap<>();
+
+        private Statistics(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name these statistics are aggregated under
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return the time taken in nanoseconds by every perform, whether it succeeded or failed
+         */
+        public LatencyHistogram latencies() {
+            return latencies;
+        }
+
+        /**
+         * @return the number of failures, keyed by the {@link Class#getName() name} of the exact type of the exception
+         *         thrown
+         */
+        public Map<String, Long> failures() {
+            final Map<String, Long> result = new HashMap<>();
+            failures.forEach((type, count) -> result.put(type, count.get()));
+            return result;
+        }
+
+        /**
+         * @param type the exact type of exception
+         * @return the number of failures that threw that type of exception
+         */
+        public long failures(final Class<? extends Throwable> type) {
+            final AtomicLong count = failures.get(type.getName());
+            return count == null ? 0 : count.get();
+        }
+
+        private void failed(final Throwable failure) {
+            final String type = failure.getClass().getName();
+            AtomicLong count = failures.get(type);
+            if (count == null) {
+                count = failures.computeIfAbsent(type, key -> new AtomicLong());
+            }
+            count.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return name + "[" + latencies + ", failures=" + failures() + "]";
+        }
+    }
+
+    private static final class TimedTask extends Task {
+
+        private final Task task;
+        private final Statistics statistics;
+
+        TimedTask(final Task task, final Statistics statistics) {
+            this.task = task;
+            this.statistics = statistics;
+        }
+
+        @Override
+        @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+        public void perform() throws Exception {
+            final long start = System.nanoTime();
+            try {
+                task.perform();
+            } catch (Exception | Error e) {
+                statistics.failed(e);
+                throw e;
+            } finally {
+                statistics.latencies.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return statistics.name + ":" + task;
+        }
+    }
+}
@@ -1,25 +1,44 @@
 package uk.org.lidalia.lang;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
-import static java.lang.Thread.currentThread;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Objects.requireNonNull;
-import static java.util.Optional.ofNullable;
+import static uk.org.lidalia.lang.ThreadSlots.INCARNATION;
+import static uk.org.lidalia.lang.ThreadSlots.INDEX;
 
 /**
  * A ThreadLocal that has no {@link ClassLoader} leaks associated with it and does not permit null.
  *
  * Values for all {@link Thread}s can be reset from any {@link Thread}.
  *
+ * Values are held in an array indexed by a small per {@link Thread} index, so reading and
+ * writing the value for the calling {@link Thread} is an uncontended array access rather than a shared map lookup.
+ *
+ * Values belonging to {@link Thread}s that have terminated are never returned by {@link #allValues()}, and are released
+ * for garbage collection by periodic sweeps carried out when new values are set.
+ *
  * @param <T> the type of the thread local variable
  */
 public class ThreadLocal<T> {
 
-    private final Map<Thread, T> contents = new ConcurrentHashMap<>();
+    private static final int MIN_SWEEP_INTERVAL = 64;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<ThreadLocal> GENERATION =
+            AtomicLongFieldUpdater.newUpdater(ThreadLocal.class, "generation");
+
+    private final SlotTable<Entry<T>> contents = new SlotTable<>();
+    private final AtomicInteger insertionsSinceSweep = new AtomicInteger();
+    private volatile long generation = 0;
     private final Supplier<T> initialValueCreator;
+    private final T sharedDefault;
+    private final Consumer<? super T> onTerminated;
     private final Supplier<T> threadValueInitialiser = new Supplier<T>() {
         @Override
         public T get() {
@@ -43,21 +62,93 @@ public class ThreadLocal<T> {
      *                            allowing a different initial instance per {@link Thread}.
      */
     public ThreadLocal(final Supplier<T> initialValueCreator) {
+        this(initialValueCreator, null, value -> {});
+    }
+
+    /**
+     * @param initialValueCreator as for {@link #ThreadLocal(Supplier)}
+     * @param onTerminated called once with the value of each {@link Thread} that terminates while holding one, when
+     *                     that value is reclaimed; allows per {@link Thread} state to be folded into shared state. It is
+     *                     called holding this ThreadLocal's monitor, which is taken before the value is removed, so a
+     *                     {@link Thread} holding the monitor finds every value either in {@link #allValues()} or
+     *                     already passed to onTerminated
+     */
+    ThreadLocal(final Supplier<T> initialValueCreator, final Consumer<? super T> onTerminated) {
+        this(initialValueCreator, null, onTerminated);
+    }
+
+    private ThreadLocal(final Supplier<T> initialValueCreator, final T sharedDefault, final Consumer<? super T> onTerminated) {
         this.initialValueCreator = requireNonNull(initialValueCreator);
+        this.sharedDefault = sharedDefault;
+        this.onTerminated = requireNonNull(onTerminated);
+    }
+
+    /**
+     * Creates a ThreadLocal whose {@link #get()} returns the default value to any {@link Thread} that has not set its own
+     * value, without storing anything for that {@link Thread}; so {@link #allValues()} contains only values that have
+     * been explicitly set. Suitable for very large numbers of {@link Thread}s that mostly read the default.
+     *
+     * @param defaultValue the value for all {@link Thread}s that have not set one.
+     *                     This must not be mutable, as it is shared between all {@link Thread}s.
+     * @param <T> the type of the thread local variable
+     * @return a ThreadLocal with the given shared default
+     */
+    public static <T> ThreadLocal<T> withSharedDefault(final T defaultValue) {
+        requireNonNull(defaultValue);
+        return new ThreadLocal<>(() -> defaultValue, defaultValue, value -> {});
     }
 
     /**
      * @param value the new value for the calling {@link Thread} - does not affect the value for any other {@link Thread}.
      */
     public void set(final T value) {
-        contents.put(currentThread(), requireNonNull(value));
+        requireNonNull(value);
+        final int[] slot = ThreadSlots.current();
+        final long currentGeneration = generation;
+        final Entry<T> entry = contents.get(slot[INDEX]);
+        if (entry != null && entry.incarnation == slot[INCARNATION] && entry.generation == currentGeneration) {
+            entry.value = value;
+        } else {
+            if (entry != null && entry.incarnation != slot[INCARNATION]) {
+                // left by a terminated thread that previously held this index
+                expungePrevious(slot[INDEX], entry, currentGeneration);
+            }
+            contents.set(slot[INDEX], new Entry<>(slot[INCARNATION], currentGeneration, value));
+            if (insertionsSinceSweep.incrementAndGet() >= Math.max(MIN_SWEEP_INTERVAL, contents.capacity() / 2)) {
+                sweep();
+            }
+        }
     }
 
     /**
      * @return the value for the calling {@link Thread}, or the initial value if this has not been set or has been removed.
      */
     public T get() {
-        return ofNullable(contents.get(currentThread())).orElseGet(threadValueInitialiser);
+        // a thread that only ever reads the shared default need not be assigned a slot
+        final int[] slot = sharedDefault == null ? ThreadSlots.current() : ThreadSlots.currentIfAssigned();
+        if (slot == null) return sharedDefault;
+        final Entry<T> entry = contents.get(slot[INDEX]);
+        if (entry != null && entry.incarnation == slot[INCARNATION] && entry.generation == generation) {
+            return entry.value;
+        } else if (sharedDefault != null) {
+            return sharedDefault;
+        } else {
+            return threadValueInitialiser.get();
+        }
+    }
+
+    /**
+     * @return the value explicitly set for the calling {@link Thread}, or null if none has been set; never initialises
+     */
+    T getIfSet() {
+        final int[] slot = ThreadSlots.currentIfAssigned();
+        if (slot == null) return null;
+        final Entry<T> entry = contents.get(slot[INDEX]);
+        if (entry != null && entry.incarnation == slot[INCARNATION] && entry.generation == generation) {
+            return entry.value;
+        } else {
+            return null;
+        }
     }
 
     /**
@@ -65,18 +156,99 @@ public class ThreadLocal<T> {
      * A subsequent call to {@link #get()} will return the initial value.
      */
     public void remove() {
-        contents.remove(currentThread());
+        final int[] slot = ThreadSlots.current();
+        final Entry<T> entry = contents.get(slot[INDEX]);
+        if (entry != null && entry.incarnation != slot[INCARNATION]) {
+            // left by a terminated thread that previously held this index
+            expungePrevious(slot[INDEX], entry, generation);
+        }
+        contents.set(slot[INDEX], null);
     }
 
     /**
      * Removes the values for ALL {@link Thread}s.
      * Subsequent calls to {@link #get()} will return the initial value.
+     *
+     * Takes constant time regardless of the number of {@link Thread}s: it starts a new generation, and values set in an
+     * earlier generation are ignored. They are released for garbage collection when next overwritten or swept.
      */
     public void reset() {
-        contents.clear();
+        GENERATION.incrementAndGet(this);
     }
 
+    /**
+     * @return a snapshot of the values for all {@link Thread}s that currently have one
+     */
     public Collection<T> allValues() {
-        return contents.values();
+        final long currentGeneration = generation;
+        final List<T> values = new ArrayList<>();
+        for (int index = 0; index < contents.capacity(); index++) {
+            final Entry<T> entry = contents.get(index);
+            if (entry != null && !expungeIfStale(index, entry, currentGeneration)) {
+                values.add(entry.value);
+            }
+        }
+        return unmodifiableList(values);
+    }
+
+    private void sweep() {
+        insertionsSinceSweep.set(0);
+        final long currentGeneration = generation;
+        for (int index = 0; index < contents.capacity(); index++) {
+            final Entry<T> entry = contents.get(index);
+            if (entry != null) {
+                expungeIfStale(index, entry, currentGeneration);
+            }
+        }
+    }
+
+    /**
+     * An entry from a generation after currentGeneration was set after the caller read the generation, and is kept.
+     *
+     * @return true if the entry was from an earlier generation or belonged to a terminated {@link Thread}
+     */
+    private boolean expungeIfStale(final int index, final Entry<T> entry, final long currentGeneration) {
+        if (entry.generation < currentGeneration) {
+            contents.compareAndSet(index, entry, null);
+            return true;
+        } else if (!ThreadSlots.isLive(index, entry.incarnation)) {
+            reclaim(index, entry);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Expunges an entry left by a terminated {@link Thread}, discarding it without reclaiming it if it is from an earlier
+     * generation, as its value was reset.
+     */
+    private void expungePrevious(final int index, final Entry<T> entry, final long currentGeneration) {
+        if (entry.generation < currentGeneration) {
+            contents.compareAndSet(index, entry, null);
+        } else {
+            reclaim(index, entry);
+        }
+    }
+
+    private void reclaim(final int index, final Entry<T> entry) {
+        synchronized (this) {
+            if (contents.compareAndSet(index, entry, null)) {
+                onTerminated.accept(entry.value);
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+
+        private final int incarnation;
+        private final long generation;
+        private volatile T value;
+
+        Entry(final int incarnation, final long generation, final T value) {
+            this.incarnation = incarnation;
+            this.generation = generation;
+            this.value = value;
+        }
     }
 }
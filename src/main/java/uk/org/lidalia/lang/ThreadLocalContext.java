@@ -0,0 +1,174 @@
+package uk.org.lidalia.lang;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Carries the values of a fixed set of {@link ThreadLocal}s from the {@link Thread} that submits work to the
+ * {@link Thread} that runs it.
+ *
+ * <pre>
+ *     ThreadLocalContext requestContext = ThreadLocalContext.of(currentUser, requestId);
+ *     Executor executor = requestContext.wrap(Executors.newFixedThreadPool(10));
+ *     executor.execute(() -&gt; log(currentUser.get())); // sees the submitting thread's user
+ * </pre>
+ *
+ * Values are captured into an array when work is wrapped or submitted, installed on the running {@link Thread} for the
+ * duration of the work, and the running {@link Thread}'s previous values restored afterwards. A {@link ThreadLocal} that
+ * had no value set when captured has its value removed for the duration.
+ */
+public final class ThreadLocalContext {
+
+    /**
+     * @param threadLocals the {@link ThreadLocal}s whose values should be carried
+     * @return a context carrying those {@link ThreadLocal}s
+     */
+    public static ThreadLocalContext of(final ThreadLocal<?>... threadLocals) {
+        return new ThreadLocalContext(threadLocals.clone());
+    }
+
+    private final ThreadLocal<?>[] threadLocals;
+
+    private ThreadLocalContext(final ThreadLocal<?>[] threadLocals) {
+        for (final ThreadLocal<?> threadLocal : threadLocals) {
+            requireNonNull(threadLocal);
+        }
+        this.threadLocals = threadLocals;
+    }
+
+    /**
+     * @return the calling {@link Thread}'s current values of this context's {@link ThreadLocal}s
+     */
+    public Snapshot capture() {
+        return new Snapshot(currentValues());
+    }
+
+    /**
+     * @param executor the executor to wrap
+     * @return an executor that captures this context when work is submitted and runs the work within it
+     */
+    public Executor wrap(final Executor executor) {
+        requireNonNull(executor);
+        return command -> executor.execute(wrap(command));
+    }
+
+    /**
+     * @param runnable the work to wrap
+     * @return a runnable that runs the work within this context as it is now
+     */
+    public Runnable wrap(final Runnable runnable) {
+        return capture().wrap(runnable);
+    }
+
+    /**
+     * @param task the work to wrap
+     * @return a task that performs the work within this context as it is now
+     */
+    public Task wrap(final Task task) {
+        return capture().wrap(task);
+    }
+
+    /**
+     * @param callable the work to wrap
+     * @param <V> the type of the result of the work
+     * @return a callable that calls the work within this context as it is now
+     */
+    public <V> Callable<V> wrap(final Callable<V> callable) {
+        return capture().wrap(callable);
+    }
+
+    private Object[] currentValues() {
+        final Object[] values = new Object[threadLocals.length];
+        for (int i = 0; i < threadLocals.length; i++) {
+            values[i] = threadLocals[i].getIfSet();
+        }
+        return values;
+    }
+
+    private void install(final Object[] values) {
+        for (int i = 0; i < threadLocals.length; i++) {
+            install(threadLocals[i], values[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void install(final ThreadLocal<T> threadLocal, final Object value) {
+        if (value == null) {
+            threadLocal.remove();
+        } else {
+            threadLocal.set((T) value);
+        }
+    }
+
+    /**
+     * The values of a {@link ThreadLocalContext}'s {@link ThreadLocal}s at the point they were captured.
+     */
+    public final class Snapshot {
+
+        private final Object[] values;
+
+        private Snapshot(final Object[] values) {
+            this.values = values;
+        }
+
+        /**
+         * @param callable the work to do
+         * @param <V> the type of the result of the work
+         * @return the result of the work, which is done on the calling {@link Thread} with the captured values installed
+         * @throws Exception if the work does
+         */
+        @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+        public <V> V call(final Callable<V> callable) throws Exception {
+            final Object[] previous = currentValues();
+            install(values);
+            try {
+                return callable.call();
+            } finally {
+                install(previous);
+            }
+        }
+
+        /**
+         * @param runnable the work to do on the calling {@link Thread} with the captured values installed
+         */
+        public void run(final Runnable runnable) {
+            final Object[] previous = currentValues();
+            install(values);
+            try {
+                runnable.run();
+            } finally {
+                install(previous);
+            }
+        }
+
+        /**
+         * @param runnable the work to wrap
+         * @return a runnable that runs the work with the captured values installed
+         */
+        public Runnable wrap(final Runnable runnable) {
+            requireNonNull(runnable);
+            return () -> run(runnable);
+        }
+
+        /**
+         * @param task the work to wrap
+         * @return a task that performs the work with the captured values installed
+         */
+        public Task wrap(final Task task) {
+            requireNonNull(task);
+            return Task.from(wrap((Callable<Void>) task));
+        }
+
+        /**
+         * @param callable the work to wrap
+         * @param <V> the type of the result of the work
+         * @return a callable that calls the work with the captured values installed
+         */
+        public <V> Callable<V> wrap(final Callable<V> callable) {
+            requireNonNull(callable);
+            return () -> call(callable);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package uk.org.lidalia.lang;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * Assigns each {@link Thread} a small int index, unique among live threads, so per thread values can be held in arrays
+ * rather than maps keyed by {@link Thread}.
+ *
+ * Indexes of threads that have terminated or been garbage collected are recycled. As a recycled index is not unique over time each
+ * assignment also carries an incarnation, incremented every time the index is reused; a value stored against an index
+ * belongs to the current thread only if it was stored with the same incarnation.
+ *
+ * The index and incarnation are held in a {@link java.lang.ThreadLocal} as an int[], a type loaded by the bootstrap
+ * {@link ClassLoader}, so no {@link ClassLoader} leak is introduced.
+ */
+final class ThreadSlots {
+
+    static final int INDEX = 0;
+    static final int INCARNATION = 1;
+
+    private static final java.lang.ThreadLocal<int[]> CURRENT = new java.lang.ThreadLocal<>();
+
+    private static final SlotTable<Owner> owners = new SlotTable<>();
+    private static final ReferenceQueue<Thread> collected = new ReferenceQueue<>();
+    private static final Deque<Owner> free = new ArrayDeque<>();
+    private static int nextIndex = 0;
+    private static int allocationsSinceScan = 0;
+
+    private static final int MIN_SCAN_INTERVAL = 64;
+
+    /**
+     * @return the {@link #INDEX} and {@link #INCARNATION} assigned to the calling {@link Thread}; must not be modified
+     */
+    static int[] current() {
+        int[] slot = CURRENT.get();
+        if (slot == null) {
+            slot = allocate();
+            CURRENT.set(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * @return the {@link #INDEX} and {@link #INCARNATION} assigned to the calling {@link Thread}, or null if it has not
+     *         been assigned any, in which case none is assigned; must not be modified
+     */
+    static int[] currentIfAssigned() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return true if the index is currently assigned to a {@link Thread} with the given incarnation which has not
+     *         terminated
+     */
+    static boolean isLive(final int index, final int incarnation) {
+        final Owner owner = owners.get(index);
+        if (owner == null || owner.incarnation != incarnation) return false;
+        final Thread thread = owner.get();
+        return thread != null && thread.isAlive();
+    }
+
+    private static synchronized int[] allocate() {
+        recycleCollected();
+        allocationsSinceScan++;
+        if (free.isEmpty() && allocationsSinceScan >= Math.max(MIN_SCAN_INTERVAL, nextIndex / 8)) {
+            recycleTerminated();
+        }
+        final Owner previous = free.poll();
+        final int index = previous == null ? nextIndex++ : previous.index;
+        final int incarnation = previous == null ? 0 : previous.incarnation + 1;
+        owners.set(index, new Owner(currentThread(), index, incarnation));
+        return new int[] { index, incarnation };
+    }
+
+    private static void recycleCollected() {
+        Owner owner;
+        while ((owner = (Owner) collected.poll()) != null) {
+            owners.compareAndSet(owner.index, owner, null);
+            free.push(owner);
+        }
+    }
+
+    /**
+     * Threads that have terminated but are still strongly referenced elsewhere are never garbage collected, so scan for
+     * them too; no more often than once per eighth as many allocations as there are indexes, to keep the cost per
+     * allocation constant.
+     */
+    private static void recycleTerminated() {
+        allocationsSinceScan = 0;
+        for (int index = 0; index < nextIndex; index++) {
+            final Owner owner = owners.get(index);
+            final Thread thread = owner == null ? null : owner.get();
+            if (thread != null && !thread.isAlive()) {
+                // clearing the reference stops it being enqueued, and so recycled a second time, when the thread is collected
+                owner.clear();
+                owners.set(index, null);
+                free.push(owner);
+            }
+        }
+    }
+
+    private static final class Owner extends WeakReference<Thread> {
+
+        private final int index;
+        private final int incarnation;
+
+        Owner(final Thread thread, final int index, final int incarnation) {
+            super(thread, collected);
+            this.index = index;
+            this.incarnation = incarnation;
+        }
+    }
+
+    private ThreadSlots() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+}
@@ -21,6 +21,6 @@ public class Base64 extends EncodedBase<Base64> {
 
     @Override
     public Bytes decode() {
-        return Bytes.of(java.util.Base64.getDecoder().decode(toString()));
+        return Bytes.wrap(java.util.Base64.getDecoder().decode(toString()));
     }
 }
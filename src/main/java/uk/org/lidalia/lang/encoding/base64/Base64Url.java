@@ -11,6 +11,6 @@ public class Base64Url extends EncodedBase<Base64Url> {
 
     @Override
     public Bytes decode() {
-        return Bytes.of(java.util.Base64.getUrlDecoder().decode(toString()));
+        return Bytes.wrap(java.util.Base64.getUrlDecoder().decode(toString()));
     }
 }
@@ -29,6 +29,6 @@ public class Hex extends EncodedBase<Hex> {
             decoded[i] = (byte) (nibble1*16+nibble2);
         }
 
-        return Bytes.of(decoded);
+        return Bytes.wrap(decoded);
     }
 }
@@ -0,0 +1,129 @@
+package uk.org.lidalia.lang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.Exceptions.doUnchecked;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class BatcherTests {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    @After public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test public void dispatchesFullBatchImmediately() throws Exception {
+        try (Batcher<Object, String> batcher = new Batcher<>((key, batch) -> batches.add(batch), 2, 1, SECONDS, executor)) {
+
+            batcher.submit("a");
+            batcher.submit("b").get(500, MILLISECONDS);
+
+            assertThat(batches, contains(asList("a", "b")));
+        }
+    }
+
+    @Test public void dispatchesPartialBatchAfterDelay() throws Exception {
+        try (Batcher<Object, String> batcher = new Batcher<>((key, batch) -> batches.add(batch), 10, 50, MILLISECONDS, executor)) {
+
+            batcher.submit("a").get(1, SECONDS);
+
+            assertThat(batches, contains(asList("a")));
+        }
+    }
+
+    @Test public void batchesPerKey() throws Exception {
+        final List<String> keys = new CopyOnWriteArrayList<>();
+        try (Batcher<String, String> batcher = new Batcher<>((key, batch) -> {
+            keys.add(key);
+            batches.add(batch);
+        }, 2, 1, SECONDS, executor)) {
+
+            final List<Future<Void>> results = new ArrayList<>();
+            results.add(batcher.submit("x", "a"));
+            results.add(batcher.submit("y", "b"));
+            results.add(batcher.submit("x", "c"));
+            results.add(batcher.submit("y", "d"));
+            for (final Future<Void> result : results) {
+                result.get(500, MILLISECONDS);
+            }
+
+            assertThat(keys, containsInAnyOrder("x", "y"));
+            assertThat(batches, containsInAnyOrder(asList("a", "c"), asList("b", "d")));
+        }
+    }
+
+    @Test public void failsEveryItemInFailedBatch() throws Exception {
+        final Exception exception = new Exception();
+        try (Batcher<Object, String> batcher = new Batcher<>((key, batch) -> { throw exception; }, 2, 1, SECONDS, executor)) {
+
+            final Future<Void> first = batcher.submit("a");
+            final Future<Void> second = batcher.submit("b");
+
+            assertThat(shouldThrow(ExecutionException.class, () -> doUnchecked(() -> first.get(500, MILLISECONDS))).getCause(),
+                    is(exception));
+            assertThat(shouldThrow(ExecutionException.class, () -> doUnchecked(() -> second.get(500, MILLISECONDS))).getCause(),
+                    is(exception));
+        }
+    }
+
+    @Test public void closeFlushesPendingBatches() throws Exception {
+        final Future<Void> result;
+        try (Batcher<Object, String> batcher = new Batcher<>((key, batch) -> batches.add(batch), 10, 1, SECONDS, executor)) {
+            result = batcher.submit("a");
+        }
+
+        result.get(500, MILLISECONDS);
+        assertThat(batches, contains(asList("a")));
+    }
+
+    @Test public void rejectsSubmissionAfterClose() {
+        final Batcher<Object, String> batcher = new Batcher<>((key, batch) -> batches.add(batch), 10, 1, SECONDS, executor);
+        batcher.close();
+
+        shouldThrow(IllegalStateException.class, () -> batcher.submit("a"));
+    }
+
+    @Test public void rejectedTimerDoesNotLeaveBatchPending() throws Exception {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.shutdown();
+        try (Batcher<Object, String> batcher = new Batcher<>((key, batch) -> batches.add(batch), 2, 1, SECONDS, executor, scheduler)) {
+
+            shouldThrow(RejectedExecutionException.class, () -> batcher.submit("a"));
+            shouldThrow(RejectedExecutionException.class, () -> batcher.submit("b"));
+            batcher.flush();
+
+            assertThat(batches.isEmpty(), is(true));
+        }
+    }
+
+    @Test public void runsTaskBatchesInSequence() throws Exception {
+        final List<String> completed = new CopyOnWriteArrayList<>();
+        try (Batcher<Object, Task> batcher = Batcher.forTasks(2, 1, SECONDS, executor)) {
+
+            batcher.submit(Task.from(() -> completed.add("a")));
+            batcher.submit(Task.from(() -> completed.add("b"))).get(500, MILLISECONDS);
+
+            assertThat(completed, contains("a", "b"));
+        }
+    }
+}
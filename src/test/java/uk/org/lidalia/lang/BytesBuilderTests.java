@@ -0,0 +1,80 @@
+package uk.org.lidalia.lang;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class BytesBuilderTests {
+
+    private final byte[] source = randomBytes(100000);
+
+    @Test public void buildsEmptyBytes() {
+        assertThat(new BytesBuilder().build().isEmpty(), is(true));
+    }
+
+    @Test public void appendsEveryKindOfInput() throws IOException {
+        final Bytes built = new BytesBuilder()
+                .append(Bytes.of("Hello"))
+                .append((byte) ' ')
+                .append("Big ".getBytes(US_ASCII))
+                .append(ByteBuffer.wrap("Wide ".getBytes(US_ASCII)))
+                .readFrom(new ByteArrayInputStream("World!!!".getBytes(US_ASCII)), 5)
+                .build();
+
+        assertThat(built.string(), is("Hello Big Wide World"));
+    }
+
+    @Test public void linksLargeBytesAndCopiesSmallInput() throws IOException {
+        final BytesBuilder builder = new BytesBuilder();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final Random random = new Random(2);
+
+        for (int i = 0; i < 500; i++) {
+            final int length = random.nextInt(i % 50 == 0 ? 5000 : 300);
+            final int offset = random.nextInt(source.length - length);
+            if (i % 3 == 0) {
+                builder.append(Bytes.wrap(source).slice(offset, offset + length));
+            } else if (i % 3 == 1) {
+                builder.append(source, offset, length);
+            } else {
+                builder.readFrom(new ByteArrayInputStream(source, offset, length));
+            }
+            expected.write(source, offset, length);
+        }
+
+        final Bytes built = builder.build();
+        assertThat(built.size(), is(expected.size()));
+        assertThat(builder.size(), is((long) expected.size()));
+        assertThat(built.array(), is(expected.toByteArray()));
+    }
+
+    @Test public void continuesAfterBuild() {
+        final BytesBuilder builder = new BytesBuilder().append("Hello".getBytes(US_ASCII));
+        final Bytes first = builder.build();
+
+        final Bytes second = builder.append(" World".getBytes(US_ASCII)).build();
+
+        assertThat(first.string(), is("Hello"));
+        assertThat(second.string(), is("Hello World"));
+    }
+
+    @Test public void readsWholeStream() throws IOException {
+        final Bytes read = Bytes.readFrom(new ByteArrayInputStream(source));
+
+        assertThat(read, is(Bytes.of(source)));
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+}
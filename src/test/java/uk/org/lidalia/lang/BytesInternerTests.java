@@ -0,0 +1,72 @@
+package uk.org.lidalia.lang;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class BytesInternerTests {
+
+    private final BytesInterner interner = new BytesInterner(64);
+
+    @Test public void returnsCanonicalInstance() {
+        final Bytes first = interner.intern(Bytes.of("Content-Type"));
+
+        assertThat(interner.intern(Bytes.of("Content-Type")), is(sameInstance(first)));
+        assertThat(interner.intern(Bytes.of("Content-Type").offHeapCopy()), is(sameInstance(first)));
+        assertThat(interner.hits(), is(2L));
+        assertThat(interner.misses(), is(1L));
+    }
+
+    @Test public void internsRangeOfArrayWithoutHoldingIt() {
+        final byte[] buffer = Bytes.of("..Content-Type..").array();
+        final Bytes interned = interner.intern(buffer, 2, 12);
+        buffer[2] = 'X';
+
+        assertThat(interned, is(Bytes.of("Content-Type")));
+        assertThat(interner.intern(ByteBuffer.wrap(Bytes.of("Content-Type").array())), is(sameInstance(interned)));
+    }
+
+    @Test public void evictsBeyondMaxEntries() {
+        for (int i = 0; i < 1000; i++) {
+            interner.intern(Bytes.of("token" + i));
+        }
+
+        assertThat(interner.size() <= 64, is(true));
+        assertThat(interner.size() > 0, is(true));
+    }
+
+    @Test public void singleStripe() {
+        final BytesInterner single = new BytesInterner(1);
+        final Bytes first = single.intern(Bytes.of("first"));
+
+        assertThat(single.intern(Bytes.of("first")), is(sameInstance(first)));
+        single.intern(Bytes.of("second"));
+        assertThat(single.size(), is(1));
+    }
+
+    @Test public void doesNotInternLongPayloads() {
+        final Bytes longPayload = Bytes.wrap(new byte[BytesInterner.DEFAULT_MAX_LENGTH + 1]);
+
+        assertThat(interner.intern(longPayload), is(sameInstance(longPayload)));
+        assertThat(interner.size(), is(0));
+    }
+
+    @Test public void clear() {
+        final Bytes first = interner.intern(Bytes.of("token"));
+        interner.clear();
+
+        assertThat(interner.size(), is(0));
+        assertThat(interner.intern(Bytes.of("token")), is(not(sameInstance(first))));
+    }
+
+    @Test public void invalidSizes() {
+        shouldThrow(IllegalArgumentException.class, () -> new BytesInterner(0));
+        shouldThrow(IllegalArgumentException.class, () -> new BytesInterner(1, -1));
+    }
+}
@@ -0,0 +1,56 @@
+package uk.org.lidalia.lang;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class BytesPatternTests {
+
+    private final BytesPattern crlf = BytesPattern.compile(Bytes.of("\r\n"));
+
+    @Test public void findsFirstAndLastOccurrence() {
+        final Bytes request = Bytes.of("GET / HTTP/1.1\r\nHost: example.com\r\n\r\n");
+
+        assertThat(crlf.indexIn(request), is(14));
+        assertThat(crlf.indexIn(request, 15), is(33));
+        assertThat(crlf.lastIndexIn(request), is(35));
+        assertThat(crlf.indexIn(Bytes.of("no line breaks")), is(-1));
+        assertThat(crlf.lastIndexIn(Bytes.of("no line breaks")), is(-1));
+    }
+
+    @Test public void findsRepetitivePatterns() {
+        final BytesPattern pattern = BytesPattern.compile(Bytes.of("aab"));
+
+        assertThat(pattern.indexIn(Bytes.of("aaaaaab")), is(4));
+        assertThat(pattern.lastIndexIn(Bytes.of("aabaaaab")), is(5));
+    }
+
+    @Test public void searchesAnyStorage() {
+        final byte[] array = new byte[10000];
+        new Random(1).nextBytes(array);
+        final Bytes heap = Bytes.of(array);
+        final BytesPattern pattern = BytesPattern.compile(heap.slice(7000, 7010));
+
+        assertThat(pattern.indexIn(heap), is(7000));
+        assertThat(pattern.indexIn(heap.offHeapCopy()), is(7000));
+        assertThat(pattern.indexIn(Bytes.concat(heap.slice(0, 7005), heap.slice(7005, 10000))), is(7000));
+    }
+
+    @Test public void splitsOnPattern() {
+        assertThat(crlf.split(Bytes.of("a\r\nb\r\n\r\nc")), contains(Bytes.of("a"), Bytes.of("b"), Bytes.of(""), Bytes.of("c")));
+        assertThat(crlf.split(Bytes.of("abc")), contains(Bytes.of("abc")));
+    }
+
+    @Test public void emptyPattern() {
+        final BytesPattern empty = BytesPattern.compile(Bytes.of(""));
+
+        assertThat(empty.indexIn(Bytes.of("abc"), 1), is(1));
+        assertThat(empty.lastIndexIn(Bytes.of("abc")), is(3));
+        shouldThrow(IllegalArgumentException.class, () -> empty.split(Bytes.of("abc")));
+    }
+}
@@ -0,0 +1,172 @@
+package uk.org.lidalia.lang;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class BytesStoreTests {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test public void putAndGetByDigest() throws IOException {
+        try (BytesStore store = BytesStore.open(directory())) {
+            final Bytes digest = store.put(Bytes.of("payload"));
+
+            assertThat(digest, is(Bytes.of("payload").sha256()));
+            assertThat(store.get(digest), is(Optional.of(Bytes.of("payload"))));
+            assertThat(store.contains(digest), is(true));
+            assertThat(store.get(Bytes.of("unknown").sha256()), is(Optional.<Bytes>empty()));
+        }
+    }
+
+    @Test public void deduplicatesIdenticalContent() throws IOException {
+        try (BytesStore store = BytesStore.open(directory())) {
+            final Bytes first = store.put(Bytes.of("payload"));
+            final long garbageBefore = store.garbageBytes();
+            final Bytes second = store.put(Bytes.of("payload").offHeapCopy());
+
+            assertThat(second, is(first));
+            assertThat(store.size(), is(1));
+            assertThat(store.references(first), is(2));
+            assertThat(store.garbageBytes() - garbageBefore, is(37L));
+        }
+    }
+
+    @Test public void removesContentWhenLastReferenceReleased() throws IOException {
+        try (BytesStore store = BytesStore.open(directory())) {
+            final Bytes digest = store.put(Bytes.of("payload"));
+            store.put(Bytes.of("payload"));
+
+            assertThat(store.release(digest), is(true));
+            assertThat(store.contains(digest), is(true));
+            assertThat(store.release(digest), is(true));
+            assertThat(store.contains(digest), is(false));
+            assertThat(store.release(digest), is(false));
+        }
+    }
+
+    @Test public void reopensWithIndexRebuilt() throws IOException {
+        final Path directory = directory();
+        final Bytes kept;
+        final Bytes released;
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            kept = store.put(Bytes.of("kept"));
+            store.put(Bytes.of("kept"));
+            released = store.put(Bytes.of("released"));
+            store.put(random(5000));
+            store.release(released);
+        }
+
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            assertThat(store.size(), is(2));
+            assertThat(store.get(kept), is(Optional.of(Bytes.of("kept"))));
+            assertThat(store.references(kept), is(2));
+            assertThat(store.contains(released), is(false));
+        }
+    }
+
+    @Test public void compactionReclaimsReleasedContent() throws IOException {
+        final Path directory = directory();
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            final Bytes kept = store.put(Bytes.of("kept"));
+            final Bytes released = store.put(random(5000));
+            final Bytes readBeforeCompaction = store.get(kept).get();
+            store.release(released);
+
+            assertThat(store.garbageBytes() > 5000, is(true));
+
+            store.compact();
+
+            assertThat(store.garbageBytes(), is(0L));
+            assertThat(segmentFiles(directory), is(1));
+            assertThat(store.get(kept), is(Optional.of(Bytes.of("kept"))));
+            assertThat(readBeforeCompaction, is(Bytes.of("kept")));
+        }
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            assertThat(store.size(), is(1));
+        }
+    }
+
+    @Test public void reopenedStoreAppendsToLastSegment() throws IOException {
+        final Path directory = directory();
+        final Bytes first;
+        final Bytes second;
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            first = store.put(Bytes.of("first"));
+        }
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            second = store.put(Bytes.of("second"));
+        }
+
+        assertThat(segmentFiles(directory), is(1));
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            assertThat(store.get(first), is(Optional.of(Bytes.of("first"))));
+            assertThat(store.get(second), is(Optional.of(Bytes.of("second"))));
+        }
+    }
+
+    @Test public void replayStopsAtFirstCorruptRecord() throws IOException {
+        final Path directory = directory();
+        final Bytes first;
+        final Bytes second;
+        final Bytes third;
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            first = store.put(Bytes.of("first"));
+            second = store.put(Bytes.of("second"));
+            third = store.put(Bytes.of("third"));
+        }
+        final Path segment = directory.resolve(String.format("%016d.segment", 0));
+        final byte[] contents = Files.readAllBytes(segment);
+        contents[50 + 45] ^= 1;
+        Files.write(segment, contents);
+
+        try (BytesStore store = BytesStore.open(directory, 1024)) {
+            assertThat(store.contains(first), is(true));
+            assertThat(store.contains(second), is(false));
+            assertThat(store.contains(third), is(false));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void directoryCanBeOpenedByOneStoreAtATime() throws IOException {
+        final Path directory = directory();
+        try (BytesStore store = BytesStore.open(directory)) {
+            BytesStore.open(directory);
+        }
+    }
+
+    @Test public void closedStoreRejectsUse() throws IOException {
+        final BytesStore store = BytesStore.open(directory());
+        final Bytes digest = store.put(Bytes.of("payload"));
+        final Bytes read = store.get(digest).get();
+        store.close();
+
+        assertThat(read, is(Bytes.of("payload")));
+        shouldThrow(IllegalStateException.class, () -> store.get(digest));
+    }
+
+    private static int segmentFiles(final Path directory) {
+        return directory.toFile().list((dir, name) -> name.endsWith(".segment")).length;
+    }
+
+    private Path directory() throws IOException {
+        return temporaryFolder.newFolder().toPath();
+    }
+
+    private static Bytes random(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(1).nextBytes(bytes);
+        return Bytes.wrap(bytes);
+    }
+}
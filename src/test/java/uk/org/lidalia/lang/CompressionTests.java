@@ -0,0 +1,124 @@
+package uk.org.lidalia.lang;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class CompressionTests {
+
+    private final Bytes text = Bytes.of(repeat("the quick brown fox jumps over the lazy dog ", 2000));
+
+    @Test public void roundTripsEachFormat() {
+        for (Compression compression : new Compression[] { Compression.GZIP, Compression.ZLIB, Compression.DEFLATE }) {
+            final Bytes compressed = text.compress(compression);
+
+            assertThat(compressed.size() < text.size(), is(true));
+            assertThat(compressed.decompress(compression), is(text));
+        }
+    }
+
+    @Test public void isReadableByJdkStreams() throws IOException {
+        assertThat(readFully(new GZIPInputStream(text.compress(Compression.GZIP).inputStream())), is(text));
+        assertThat(readFully(new InflaterInputStream(text.compress(Compression.ZLIB).inputStream())), is(text));
+        assertThat(readFully(new InflaterInputStream(
+                text.compress(Compression.DEFLATE).inputStream(), new Inflater(true))), is(text));
+    }
+
+    @Test public void readsJdkGzipIncludingConcatenatedMembers() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(Bytes.of("member ").array());
+        }
+        final Bytes member = Bytes.of(out.toByteArray());
+
+        assertThat(member.decompress(Compression.GZIP), is(Bytes.of("member ")));
+        assertThat(Bytes.concat(member, member).decompress(Compression.GZIP), is(Bytes.of("member member ")));
+    }
+
+    @Test public void compressesAnyStorage() {
+        final byte[] array = new byte[100000];
+        new Random(1).nextBytes(array);
+        final Bytes heap = Bytes.of(array);
+        final Bytes expected = heap.compress(Compression.GZIP);
+
+        assertThat(heap.offHeapCopy().compress(Compression.GZIP), is(expected));
+        assertThat(Bytes.concat(heap.slice(0, 50000).offHeapCopy(), heap.slice(50000, 100000))
+                .compress(Compression.GZIP), is(expected));
+    }
+
+    @Test public void decompressesAnyStorage() {
+        final byte[] array = new byte[100000];
+        new Random(1).nextBytes(array);
+        final Bytes heap = Bytes.of(array);
+        final Bytes member = heap.compress(Compression.GZIP);
+        final Bytes members = Bytes.concat(member, member);
+        final int splitInSecondHeader = member.size() + 5;
+
+        assertThat(member.offHeapCopy().decompress(Compression.GZIP), is(heap));
+        assertThat(Bytes.concat(members.slice(0, 30000).offHeapCopy(), members.slice(30000, splitInSecondHeader),
+                members.slice(splitInSecondHeader, members.size()).offHeapCopy()).decompress(Compression.GZIP),
+                is(Bytes.concat(heap, heap)));
+    }
+
+    @Test public void streamsFromInputStream() throws IOException {
+        final Bytes compressed = Compression.ZLIB.compress(text.inputStream());
+
+        assertThat(compressed, is(text.compress(Compression.ZLIB)));
+        assertThat(Compression.ZLIB.decompress(new ByteArrayInputStream(compressed.array())), is(text));
+    }
+
+    @Test public void levelAndStrategy() {
+        final Bytes fastest = text.compress(Compression.DEFLATE.withLevel(Deflater.NO_COMPRESSION));
+        final Bytes huffman = text.compress(Compression.DEFLATE.withStrategy(Deflater.HUFFMAN_ONLY));
+
+        assertThat(fastest.size() > text.size(), is(true));
+        assertThat(fastest.decompress(Compression.DEFLATE), is(text));
+        assertThat(huffman, is(not(text.compress(Compression.DEFLATE))));
+        assertThat(huffman.decompress(Compression.DEFLATE), is(text));
+        assertThat(Compression.GZIP.withLevel(1), is(Compression.GZIP.withLevel(1)));
+        assertThat(Compression.GZIP.withLevel(1), is(not(Compression.ZLIB.withLevel(1))));
+    }
+
+    @Test public void invalidLevelOrStrategy() {
+        shouldThrow(IllegalArgumentException.class, () -> Compression.GZIP.withLevel(10));
+        shouldThrow(IllegalArgumentException.class, () -> Compression.GZIP.withStrategy(3));
+    }
+
+    @Test public void invalidCompressedData() {
+        final Bytes compressed = text.compress(Compression.GZIP);
+        final byte[] corrupt = compressed.array();
+        corrupt[corrupt.length - 8] ^= 1;
+
+        shouldThrow(IllegalArgumentException.class, () -> Bytes.of("not compressed").decompress(Compression.GZIP));
+        shouldThrow(IllegalArgumentException.class, () -> Bytes.of("not compressed").decompress(Compression.ZLIB));
+        shouldThrow(IllegalArgumentException.class,
+                () -> compressed.slice(0, compressed.size() - 1).decompress(Compression.GZIP));
+        shouldThrow(IllegalArgumentException.class, () -> Bytes.wrap(corrupt).decompress(Compression.GZIP));
+    }
+
+    private static Bytes readFully(final InputStream in) throws IOException {
+        return new BytesBuilder().readFrom(in).build();
+    }
+
+    private static String repeat(final String toRepeat, final int times) {
+        final StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(toRepeat);
+        }
+        return repeated.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package uk.org.lidalia.lang;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class LatencyHistogramTests {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test public void emptyHistogram() {
+        assertThat(histogram.count(), is(0L));
+        assertThat(histogram.max(), is(0L));
+        assertThat(histogram.mean(), is(0.0));
+        assertThat(histogram.percentile(99), is(0L));
+    }
+
+    @Test public void smallValuesAreExact() {
+        for (int i = 0; i < 16; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.percentile(50), is(7L));
+        assertThat(histogram.percentile(100), is(15L));
+    }
+
+    @Test public void percentilesAreWithinBucketPrecision() {
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertThat(histogram.count(), is(1000L));
+        assertThat(histogram.mean(), is(500500.0));
+        assertThat(histogram.max(), is(1000000L));
+        assertThat(histogram.percentile(50), is(allOf(greaterThanOrEqualTo(500000L), lessThanOrEqualTo(500000L * 17 / 16))));
+        assertThat(histogram.percentile(99), is(allOf(greaterThanOrEqualTo(990000L), lessThanOrEqualTo(1000000L))));
+        assertThat(histogram.percentile(100), is(1000000L));
+    }
+
+    @Test public void recordsExtremeValues() {
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.percentile(50), is(0L));
+        assertThat(histogram.percentile(100), is(Long.MAX_VALUE));
+    }
+
+    @Test public void totalSaturatesRatherThanOverflowing() {
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(Long.MAX_VALUE);
+
+        final LatencyHistogram other = new LatencyHistogram();
+        other.record(Long.MAX_VALUE);
+        histogram.add(other);
+
+        assertThat(histogram.mean(), is(Long.MAX_VALUE / 3.0));
+    }
+
+    @Test public void bucketsCoverEveryValue() {
+        for (int bucket = 0; bucket < 959; bucket++) {
+            assertThat(LatencyHistogram.bucketOf(LatencyHistogram.highestValueIn(bucket)), is(bucket));
+            assertThat(LatencyHistogram.bucketOf(LatencyHistogram.highestValueIn(bucket) + 1), is(bucket + 1));
+        }
+    }
+
+    @Test public void rejectsInvalidPercentile() {
+        shouldThrow(IllegalArgumentException.class, () -> histogram.percentile(100.1));
+    }
+}
@@ -1,6 +1,7 @@
 package uk.org.lidalia.lang;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,6 +11,7 @@ import java.util.stream.Collectors;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
@@ -99,6 +101,59 @@ public class LazyValueTests {
         assertThat(lazyValue.toString(), is("expected value"));
     }
 
+    @Test
+    public void reportsEvaluationDuration() throws Exception {
+        final LazyValueMetrics metrics = mock(LazyValueMetrics.class);
+        final LazyValue<String> lazyValue = new LazyValue<>(() -> {
+            sleepUninterruptibly(20, MILLISECONDS);
+            return "result";
+        }, metrics);
+
+        lazyValue.call();
+        lazyValue.call();
+
+        final ArgumentCaptor<Long> duration = ArgumentCaptor.forClass(Long.class);
+        verify(metrics, times(1)).evaluated(duration.capture());
+        assertThat(duration.getValue(), greaterThanOrEqualTo(MILLISECONDS.toNanos(20)));
+        verify(metrics, never()).failed(anyLong(), any(Throwable.class));
+    }
+
+    @Test
+    public void reportsFailure() throws Exception {
+        final LazyValueMetrics metrics = mock(LazyValueMetrics.class);
+        final Exception expectedException = new Exception();
+
+        shouldThrow(Exception.class, () ->
+                new LazyValue<>(() -> {
+                    throw expectedException;
+                }, metrics).call()
+        );
+
+        verify(metrics).failed(anyLong(), eq(expectedException));
+        verify(metrics, never()).evaluated(anyLong());
+    }
+
+    @Test
+    public void reportsWaitingThreads() throws Exception {
+        final LazyValueMetrics metrics = mock(LazyValueMetrics.class);
+        final CountDownLatch evaluating = new CountDownLatch(1);
+        final LazyValue<String> lazyValue = new LazyValue<>(() -> {
+            evaluating.countDown();
+            sleepUninterruptibly(100, MILLISECONDS);
+            return "result";
+        }, metrics);
+
+        final Thread evaluator = new Thread(lazyValue::call);
+        evaluator.start();
+        evaluating.await();
+
+        assertThat(lazyValue.call(), is("result"));
+        evaluator.join();
+
+        verify(metrics, times(1)).waited(anyLong(), eq(1));
+        verify(metrics, times(1)).evaluated(anyLong());
+    }
+
     private static <T> List<T> concurrently(int runs, Callable<T> work) throws InterruptedException {
         final CountDownLatch start = new CountDownLatch(1);
         final ExecutorService executor = Executors.newFixedThreadPool(runs);
@@ -0,0 +1,97 @@
+package uk.org.lidalia.lang;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class ObjectPoolTests {
+
+    private final List<StringBuilder> disposed = new CopyOnWriteArrayList<>();
+    private final ObjectPool<StringBuilder> pool =
+            new ObjectPool<>(StringBuilder::new, builder -> builder.setLength(0), disposed::add, 1);
+
+    @Test public void reusesReleasedObject() {
+        final StringBuilder first;
+        try (ObjectPool.Handle<StringBuilder> handle = pool.acquire()) {
+            first = handle.get().append("used");
+        }
+
+        try (ObjectPool.Handle<StringBuilder> handle = pool.acquire()) {
+            assertThat(handle.get(), is(sameInstance(first)));
+            assertThat(handle.get().length(), is(0));
+        }
+        assertThat(pool.hits(), is(1L));
+        assertThat(pool.misses(), is(1L));
+    }
+
+    @Test public void disposesObjectsBeyondCapacity() {
+        final ObjectPool.Handle<StringBuilder> first = pool.acquire();
+        final ObjectPool.Handle<StringBuilder> second = pool.acquire();
+        final StringBuilder secondObject = second.get();
+
+        first.release();
+        second.release();
+
+        assertThat(disposed, contains(secondObject));
+    }
+
+    @Test public void objectReleasedOnAnotherThreadReturnsToAcquiringThread() throws InterruptedException {
+        final ObjectPool.Handle<StringBuilder> handle = pool.acquire();
+        final StringBuilder object = handle.get();
+
+        Thread thread = new Thread(handle::release);
+        thread.start();
+        thread.join();
+
+        assertThat(pool.acquire().get(), is(sameInstance(object)));
+    }
+
+    @Test public void releasedHandleCannotBeUsed() {
+        final ObjectPool.Handle<StringBuilder> handle = pool.acquire();
+        handle.release();
+
+        shouldThrow(IllegalStateException.class, handle::get);
+        shouldThrow(IllegalStateException.class, handle::release);
+    }
+
+    @Test public void releasedHandleCannotReachObjectAcquiredAgain() {
+        final ObjectPool.Handle<StringBuilder> released = pool.acquire();
+        released.release();
+        final ObjectPool.Handle<StringBuilder> reacquired = pool.acquire();
+
+        shouldThrow(IllegalStateException.class, released::get);
+        shouldThrow(IllegalStateException.class, released::release);
+        assertThat(reacquired.get().append("still mine").toString(), is("still mine"));
+        assertThat(disposed.isEmpty(), is(true));
+    }
+
+    @Test public void resetEmptiesPools() {
+        pool.acquire().release();
+
+        pool.reset();
+        pool.acquire();
+
+        assertThat(pool.misses(), is(2L));
+    }
+
+    @Test public void resetDisposesPooledObjects() {
+        final ObjectPool.Handle<StringBuilder> pooled = pool.acquire();
+        final ObjectPool.Handle<StringBuilder> acquired = pool.acquire();
+        final StringBuilder pooledObject = pooled.get();
+        final StringBuilder acquiredObject = acquired.get();
+        pooled.release();
+
+        pool.reset();
+        assertThat(disposed, contains(pooledObject));
+
+        acquired.release();
+        assertThat(disposed, contains(pooledObject, acquiredObject));
+    }
+}
@@ -0,0 +1,60 @@
+package uk.org.lidalia.lang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PerThreadAccumulatorTests {
+
+    private final PerThreadAccumulator<LatencyHistogram> accumulator =
+            new PerThreadAccumulator<>(LatencyHistogram::new, LatencyHistogram::add);
+
+    @Test public void eachThreadHasItsOwnCell() throws InterruptedException {
+        final LatencyHistogram mainCell = accumulator.local();
+        final List<LatencyHistogram> otherCell = new ArrayList<>();
+
+        Thread thread = new Thread(() -> otherCell.add(accumulator.local()));
+        thread.start();
+        thread.join();
+
+        assertThat(accumulator.local() == mainCell, is(true));
+        assertThat(otherCell.get(0) == mainCell, is(false));
+    }
+
+    @Test public void snapshotMergesAllCells() throws InterruptedException {
+        accumulator.local().record(1);
+
+        Thread thread = new Thread(() -> accumulator.local().record(100));
+        thread.start();
+        thread.join();
+
+        final LatencyHistogram snapshot = accumulator.snapshot();
+        assertThat(snapshot.count(), is(2L));
+        assertThat(snapshot.max(), is(100L));
+    }
+
+    @Test public void retainsStateOfTerminatedThreads() throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            Thread thread = new Thread(() -> accumulator.local().record(5));
+            thread.start();
+            thread.join();
+        }
+
+        assertThat(accumulator.snapshot().count(), is(500L));
+    }
+
+    @Test public void resetDiscardsAllState() throws InterruptedException {
+        accumulator.local().record(1);
+        Thread thread = new Thread(() -> accumulator.local().record(100));
+        thread.start();
+        thread.join();
+
+        accumulator.reset();
+
+        assertThat(accumulator.snapshot().count(), is(0L));
+    }
+}
@@ -0,0 +1,40 @@
+package uk.org.lidalia.lang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PerThreadCounterTests {
+
+    private final PerThreadCounter counter = new PerThreadCounter();
+
+    @Test public void sumsAdditionsFromAllThreads() throws InterruptedException {
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    counter.increment();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        counter.add(5);
+
+        assertThat(counter.sum(), is(100005L));
+    }
+
+    @Test public void resetSetsToZero() {
+        counter.add(10);
+
+        counter.reset();
+
+        assertThat(counter.sum(), is(0L));
+    }
+}
@@ -0,0 +1,39 @@
+package uk.org.lidalia.lang;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PerThreadStatisticsTests {
+
+    private final PerThreadStatistics statistics = new PerThreadStatistics();
+
+    @Test public void emptyStatistics() {
+        final PerThreadStatistics.Snapshot snapshot = statistics.snapshot();
+
+        assertThat(snapshot.count(), is(0L));
+        assertThat(snapshot.min(), is(Long.MAX_VALUE));
+        assertThat(snapshot.max(), is(Long.MIN_VALUE));
+        assertThat(snapshot.mean(), is(0.0));
+    }
+
+    @Test public void mergesValuesFromAllThreads() throws InterruptedException {
+        statistics.record(10);
+        statistics.record(20);
+
+        Thread thread = new Thread(() -> {
+            statistics.record(-5);
+            statistics.record(35);
+        });
+        thread.start();
+        thread.join();
+
+        final PerThreadStatistics.Snapshot snapshot = statistics.snapshot();
+        assertThat(snapshot.count(), is(4L));
+        assertThat(snapshot.sum(), is(60L));
+        assertThat(snapshot.min(), is(-5L));
+        assertThat(snapshot.max(), is(35L));
+        assertThat(snapshot.mean(), is(15.0));
+    }
+}
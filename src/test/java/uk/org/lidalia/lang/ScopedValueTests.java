@@ -0,0 +1,73 @@
+package uk.org.lidalia.lang;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class ScopedValueTests {
+
+    private final ScopedValue<String> user = ScopedValue.newInstance();
+    private final ScopedValue<String> requestId = ScopedValue.newInstance();
+
+    @Test public void unboundOutsideScope() {
+        assertThat(user.isBound(), is(false));
+        assertThat(user.orElse("default"), is("default"));
+        shouldThrow(NoSuchElementException.class, user::get);
+    }
+
+    @Test public void boundWithinScope() throws Exception {
+        final String result = ScopedValue.where(user, "bob").where(requestId, "123").call(
+                () -> user.get() + ":" + requestId.get());
+
+        assertThat(result, is("bob:123"));
+        assertThat(user.isBound(), is(false));
+    }
+
+    @Test public void nestedBindingShadowsOuter() {
+        final AtomicReference<String> inner = new AtomicReference<>();
+        final AtomicReference<String> outerAfter = new AtomicReference<>();
+
+        ScopedValue.where(user, "outer").run(() -> {
+            ScopedValue.where(user, "inner").run(() -> inner.set(user.get()));
+            outerAfter.set(user.get());
+        });
+
+        assertThat(inner.get(), is("inner"));
+        assertThat(outerAfter.get(), is("outer"));
+    }
+
+    @Test public void unboundAfterException() {
+        shouldThrow(IllegalStateException.class, () -> ScopedValue.where(user, "bob").run(() -> {
+            throw new IllegalStateException();
+        }));
+
+        assertThat(user.isBound(), is(false));
+    }
+
+    @Test public void notVisibleOnOtherThreads() {
+        final AtomicReference<Boolean> boundOnOtherThread = new AtomicReference<>();
+
+        ScopedValue.where(user, "bob").run(() -> {
+            Thread thread = new Thread(() -> boundOnOtherThread.set(user.isBound()));
+            thread.start();
+            Exceptions.doUnchecked(() -> {
+                thread.join();
+                return null;
+            });
+        });
+
+        assertThat(boundOnOtherThread.get(), is(false));
+    }
+
+    @Test public void carrierExposesItsBindings() {
+        final ScopedValue.Carrier carrier = ScopedValue.where(user, "bob");
+
+        assertThat(carrier.get(user), is("bob"));
+        shouldThrow(NoSuchElementException.class, () -> carrier.get(requestId));
+    }
+}
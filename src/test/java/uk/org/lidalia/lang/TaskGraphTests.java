@@ -0,0 +1,174 @@
+package uk.org.lidalia.lang;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class TaskGraphTests {
+
+    private static final int CHAIN_LENGTH = 10000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<String> completed = new CopyOnWriteArrayList<>();
+
+    @After public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test public void runsTasksAfterTheirPrerequisites() throws Exception {
+        final Task a = recording("a");
+        final Task b = recording("b");
+        final Task c = recording("c");
+
+        new TaskGraph(executor).add(c, b).add(b, a).perform();
+
+        assertThat(completed, contains("a", "b", "c"));
+    }
+
+    @Test public void runsIndependentTasksConcurrently() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final Task a = awaiting(bothStarted, "a");
+        final Task b = awaiting(bothStarted, "b");
+        final Task c = recording("c");
+
+        new TaskGraph(executor).add(c, a, b).perform();
+
+        assertThat(completed, containsInAnyOrder("a", "b", "c"));
+        assertThat(completed.indexOf("c"), is(2));
+    }
+
+    @Test public void failureSkipsDownstreamTasksOnly() {
+        final Exception exception = new Exception();
+        final Task failing = new Task() {
+            @Override
+            public void perform() throws Exception {
+                throw exception;
+            }
+        };
+        final Task downstream = recording("downstream");
+        final Task transitivelyDownstream = recording("transitivelyDownstream");
+        final Task unrelated = recording("unrelated");
+
+        final Exception actual = shouldThrow(Exception.class, new TaskGraph(executor)
+                .add(downstream, failing)
+                .add(transitivelyDownstream, downstream)
+                .add(unrelated));
+
+        assertThat(actual, is(exception));
+        assertThat(completed, contains("unrelated"));
+    }
+
+    @Test public void rejectsCycles() {
+        final Task a = recording("a");
+        final Task b = recording("b");
+        final Task c = recording("c");
+        final TaskGraph graph = new TaskGraph(executor).add(b, a).add(c, b);
+
+        shouldThrow(IllegalArgumentException.class, () -> graph.add(a, c));
+        shouldThrow(IllegalArgumentException.class, () -> graph.add(a, a));
+        assertThat(graph.size(), is(3));
+    }
+
+    @Test public void waitsForSlowPrerequisites() throws Exception {
+        final Task slow = new Task() {
+            @Override
+            public void perform() throws Exception {
+                Thread.sleep(50);
+                completed.add("slow");
+            }
+        };
+        final Task fast = recording("fast");
+        final Task last = recording("last");
+
+        new TaskGraph(executor).add(last, slow, fast).perform();
+
+        assertThat(completed.indexOf("fast"), is(lessThan(completed.indexOf("last"))));
+        assertThat(completed.indexOf("slow"), is(lessThan(completed.indexOf("last"))));
+    }
+
+    @Test public void runsLongChainOnCallingThread() throws Exception {
+        final TaskGraph graph = new TaskGraph(Runnable::run);
+        Task previous = recording("first");
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            final Task next = Task.from(() -> null);
+            graph.add(next, previous);
+            previous = next;
+        }
+        graph.add(recording("last"), previous);
+
+        graph.perform();
+
+        assertThat(completed, contains("first", "last"));
+    }
+
+    @Test public void skipsLongChainAfterFailure() {
+        final Exception exception = new Exception();
+        final Task failing = new Task() {
+            @Override
+            public void perform() throws Exception {
+                throw exception;
+            }
+        };
+        final TaskGraph graph = new TaskGraph(executor);
+        Task previous = failing;
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            final Task next = recording("skipped");
+            graph.add(next, previous);
+            previous = next;
+        }
+
+        final Exception actual = shouldThrow(Exception.class, graph);
+
+        assertThat(actual, is(exception));
+        assertThat(completed.isEmpty(), is(true));
+    }
+
+    @Test public void nestedGraphsDoNotDeadlockForkJoinPool() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        final TaskGraph outer = new TaskGraph(pool);
+        for (int i = 0; i < 4; i++) {
+            final Task leaf = recording("leaf");
+            outer.add(new TaskGraph(pool).add(recording("leaf"), leaf));
+        }
+
+        try {
+            executor.submit(() -> {
+                outer.perform();
+                return null;
+            }).get(10, SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(completed.size(), is(8));
+    }
+
+    private Task recording(final String name) {
+        return Task.from(() -> completed.add(name));
+    }
+
+    private Task awaiting(final CountDownLatch latch, final String name) {
+        return new Task() {
+            @Override
+            public void perform() throws Exception {
+                latch.countDown();
+                latch.await();
+                completed.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package uk.org.lidalia.lang;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
+
+public class TaskLatenciesTests {
+
+    private final TaskLatencies latencies = new TaskLatencies();
+
+    @Test public void recordsLatencyPerName() throws Exception {
+        latencies.timed("a", Task.from(() -> {})).perform();
+        latencies.timed("a", Task.from(() -> {})).perform();
+        latencies.timed("b", Task.from(() -> {})).perform();
+
+        assertThat(latencies.statistics("a").latencies().count(), is(2L));
+        assertThat(latencies.statistics("b").latencies().count(), is(1L));
+        assertThat(latencies.statistics("c").latencies().count(), is(0L));
+    }
+
+    @Test public void recordsDuration() throws Exception {
+        latencies.timed("sleep", new Task() {
+            @Override
+            public void perform() throws Exception {
+                Thread.sleep(20);
+            }
+        }).perform();
+
+        assertThat(latencies.statistics("sleep").latencies().max(), is(greaterThanOrEqualTo(20_000_000L)));
+    }
+
+    @Test public void countsFailuresByType() {
+        final Task failing = latencies.timed("failing", new Task() {
+            @Override
+            public void perform() {
+                throw new IllegalStateException();
+            }
+        });
+
+        shouldThrow(IllegalStateException.class, failing);
+        shouldThrow(IllegalStateException.class, failing);
+
+        final TaskLatencies.Statistics statistics = latencies.statistics("failing");
+        assertThat(statistics.failures(IllegalStateException.class), is(2L));
+        assertThat(statistics.failures(), hasEntry(IllegalStateException.class.getName(), 2L));
+        assertThat(statistics.latencies().count(), is(2L));
+    }
+}
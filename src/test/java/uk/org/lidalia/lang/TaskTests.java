@@ -1,9 +1,21 @@
 package uk.org.lidalia.lang;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.junit.After;
 import org.junit.Test;
 
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static uk.org.lidalia.lang.ShouldThrow.shouldThrow;
@@ -64,4 +76,115 @@ public class TaskTests {
         });
         assertThat(actual, is(exception));
     }
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test public void parallelRunsAllTasksConcurrently() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final List<String> completed = new CopyOnWriteArrayList<>();
+
+        Task.parallel(executor, asList(awaiting(bothStarted, "a", completed), awaiting(bothStarted, "b", completed))).perform();
+
+        assertThat(completed, containsInAnyOrder("a", "b"));
+    }
+
+    @Test public void parallelCancelsSiblingsOnFirstFailure() throws Exception {
+        final Exception exception = new Exception();
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        final Task slow = new Task() {
+            @Override
+            public void perform() {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        };
+        final Task failing = new Task() {
+            @Override
+            public void perform() throws Exception {
+                throw exception;
+            }
+        };
+
+        final Exception actual = shouldThrow(Exception.class, () -> Task.parallel(executor, asList(slow, failing)).run());
+
+        assertThat(actual, is(exception));
+        executor.shutdown();
+        executor.awaitTermination(1, SECONDS);
+        assertThat(interrupted.get(), is(true));
+    }
+
+    @Test public void sequenceRunsTasksInOrder() throws Exception {
+        final List<String> completed = new CopyOnWriteArrayList<>();
+
+        Task.sequence(recording("a", completed), recording("b", completed), recording("c", completed)).perform();
+
+        assertThat(completed, contains("a", "b", "c"));
+    }
+
+    @Test public void sequenceStopsAtFirstFailure() {
+        final List<String> completed = new CopyOnWriteArrayList<>();
+        final Exception exception = new Exception();
+        final Task failing = new Task() {
+            @Override
+            public void perform() throws Exception {
+                throw exception;
+            }
+        };
+
+        final Exception actual = shouldThrow(Exception.class,
+                Task.sequence(recording("a", completed), failing, recording("c", completed)));
+
+        assertThat(actual, is(exception));
+        assertThat(completed, contains("a"));
+    }
+
+    @Test public void runAllRunsEveryTask() throws Exception {
+        final List<String> completed = new CopyOnWriteArrayList<>();
+
+        Task.runAll(executor, asList(recording("a", completed), recording("b", completed)));
+
+        assertThat(completed, containsInAnyOrder("a", "b"));
+    }
+
+    @Test public void nestedParallelTasksDoNotDeadlockForkJoinPool() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        final List<String> completed = new CopyOnWriteArrayList<>();
+        final List<Task> nested = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            nested.add(Task.parallel(pool, asList(recording("leaf", completed), recording("leaf", completed))));
+        }
+
+        try {
+            executor.submit(() -> {
+                Task.runAll(pool, nested);
+                return null;
+            }).get(10, SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(completed.size(), is(16));
+    }
+
+    private static Task recording(final String name, final List<String> completed) {
+        return Task.from(() -> completed.add(name));
+    }
+
+    private static Task awaiting(final CountDownLatch latch, final String name, final List<String> completed) {
+        return new Task() {
+            @Override
+            public void perform() throws Exception {
+                latch.countDown();
+                latch.await();
+                completed.add(name);
+            }
+        };
+    }
 }
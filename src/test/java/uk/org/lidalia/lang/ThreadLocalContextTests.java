@@ -0,0 +1,71 @@
+package uk.org.lidalia.lang;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ThreadLocalContextTests {
+
+    private final ThreadLocal<String> user = new ThreadLocal<>("anonymous");
+    private final ThreadLocal<String> requestId = new ThreadLocal<>("none");
+    private final ThreadLocalContext context = ThreadLocalContext.of(user, requestId);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test public void wrappedCallableSeesCapturedValues() throws Exception {
+        user.set("bob");
+        requestId.set("123");
+
+        final Callable<String> wrapped = context.wrap(() -> user.get() + ":" + requestId.get());
+
+        assertThat(executor.submit(wrapped).get(), is("bob:123"));
+    }
+
+    @Test public void previousValuesAreRestored() throws Exception {
+        executor.submit(() -> user.set("worker")).get();
+        user.set("bob");
+
+        executor.submit(context.wrap(() -> user.get())).get();
+
+        assertThat(executor.submit(() -> user.get()).get(), is("worker"));
+    }
+
+    @Test public void unsetValuesAreRemovedForTheDuration() throws Exception {
+        executor.submit(() -> requestId.set("stale")).get();
+
+        final String seen = executor.submit(context.wrap(() -> requestId.get())).get();
+
+        assertThat(seen, is("none"));
+        assertThat(executor.submit(() -> requestId.get()).get(), is("stale"));
+    }
+
+    @Test public void wrappedExecutorCapturesOnSubmission() throws Exception {
+        final AtomicReference<String> seen = new AtomicReference<>();
+        user.set("bob");
+
+        context.wrap(executor).execute(() -> seen.set(user.get()));
+        user.set("alice");
+        executor.submit(() -> {}).get();
+
+        assertThat(seen.get(), is("bob"));
+    }
+
+    @Test public void snapshotRunsOnCallingThread() throws Exception {
+        user.set("bob");
+        final ThreadLocalContext.Snapshot snapshot = context.capture();
+        user.set("alice");
+
+        assertThat(snapshot.call(() -> user.get()), is("bob"));
+        assertThat(user.get(), is("alice"));
+    }
+}
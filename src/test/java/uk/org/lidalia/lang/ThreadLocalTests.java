@@ -1,9 +1,21 @@
 package uk.org.lidalia.lang;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import org.junit.Test;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
@@ -112,4 +124,212 @@ public class ThreadLocalTests {
         assertThat(threadLocal.get(), is(Thread.currentThread().getName()));
         assertThat(fromThread.get(), is(thread.getName()));
     }
+
+    @Test
+    public void allValuesContainsValueForEachThread() throws InterruptedException {
+        final ThreadLocal<String> threadLocal = new ThreadLocal<>("Initial Value");
+        final CountDownLatch set = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        threadLocal.set("Thread1");
+
+        Thread thread = new Thread(() -> {
+            threadLocal.set("Thread2");
+            set.countDown();
+            awaitUninterruptibly(finish);
+        });
+        thread.start();
+        set.await();
+
+        assertThat(threadLocal.allValues(), containsInAnyOrder("Thread1", "Thread2"));
+        finish.countDown();
+        thread.join();
+    }
+
+    @Test
+    public void manyThreadsEachHaveTheirOwnValue() throws InterruptedException {
+        final ThreadLocal<String> threadLocal = new ThreadLocal<>("Initial Value");
+        final List<String> seen = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+            final String value = "Thread" + i;
+            Thread thread = new Thread(() -> {
+                seen.add(threadLocal.get());
+                threadLocal.set(value);
+            });
+            thread.start();
+            thread.join();
+            if (i % 50 == 0) System.gc();
+        }
+
+        assertThat(seen, everyItem(is("Initial Value")));
+    }
+
+    @Test
+    public void allValuesExcludesTerminatedThreads() throws InterruptedException {
+        final ThreadLocal<String> threadLocal = new ThreadLocal<>("Initial Value");
+        threadLocal.set("Thread1");
+
+        Thread thread = new Thread(() -> threadLocal.set("Thread2"));
+        thread.start();
+        thread.join();
+
+        assertThat(threadLocal.allValues(), contains("Thread1"));
+    }
+
+    @Test
+    public void sharedDefaultIsReturnedWithoutBeingStored() throws InterruptedException {
+        final ThreadLocal<String> threadLocal = ThreadLocal.withSharedDefault("Default");
+        final AtomicReference<String> fromThread = new AtomicReference<>();
+
+        Thread thread = new Thread(() -> fromThread.set(threadLocal.get()));
+        thread.start();
+        thread.join();
+
+        assertThat(threadLocal.get(), is("Default"));
+        assertThat(fromThread.get(), is("Default"));
+        assertThat(threadLocal.allValues(), is(empty()));
+    }
+
+    @Test
+    public void readingSharedDefaultDoesNotAssignSlot() throws InterruptedException {
+        final ThreadLocal<String> threadLocal = ThreadLocal.withSharedDefault("Default");
+        final AtomicReference<int[]> slot = new AtomicReference<>(new int[0]);
+
+        Thread thread = new Thread(() -> {
+            threadLocal.get();
+            slot.set(ThreadSlots.currentIfAssigned());
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(slot.get() == null, is(true));
+    }
+
+    @Test
+    public void sharedDefaultCanBeOverriddenPerThread() {
+        final ThreadLocal<String> threadLocal = ThreadLocal.withSharedDefault("Default");
+
+        threadLocal.set("New Value");
+        assertThat(threadLocal.get(), is("New Value"));
+        assertThat(threadLocal.allValues(), contains("New Value"));
+
+        threadLocal.remove();
+        assertThat(threadLocal.get(), is("Default"));
+    }
+
+    @Test
+    public void resetFromAnotherThreadAffectsLiveThreads() throws InterruptedException {
+        final ThreadLocal<String> threadLocal = new ThreadLocal<>("Initial");
+        final CountDownLatch set = new CountDownLatch(1);
+        final CountDownLatch reset = new CountDownLatch(1);
+        final AtomicReference<String> afterReset = new AtomicReference<>();
+        final AtomicReference<String> afterSetAgain = new AtomicReference<>();
+
+        Thread thread = new Thread(() -> {
+            threadLocal.set("Thread2");
+            set.countDown();
+            awaitUninterruptibly(reset);
+            afterReset.set(threadLocal.get());
+            threadLocal.set("Thread2 again");
+            afterSetAgain.set(threadLocal.get());
+        });
+        thread.start();
+        set.await();
+        threadLocal.set("Thread1");
+
+        threadLocal.reset();
+
+        assertThat(threadLocal.allValues(), is(empty()));
+        assertThat(threadLocal.get(), is("Initial"));
+        reset.countDown();
+        thread.join();
+        assertThat(afterReset.get(), is("Initial"));
+        assertThat(afterSetAgain.get(), is("Thread2 again"));
+    }
+
+    @Test
+    public void valueSetInNewGenerationDuringScanIsKept() throws InterruptedException {
+        final AtomicReference<Runnable> onTerminated = new AtomicReference<>(() -> {});
+        final ThreadLocal<String> threadLocal =
+                new ThreadLocal<>(() -> "Initial", value -> onTerminated.getAndSet(() -> {}).run());
+        final Worker dead = new Worker();
+        final int deadIndex = dead.call(() -> {
+            threadLocal.set("Dead");
+            return ThreadSlots.current()[ThreadSlots.INDEX];
+        });
+        dead.interrupt();
+        dead.join();
+        // the setter's entry must be scanned after the dead thread's, whose reclamation interleaves the reset and set
+        final List<Worker> workers = new ArrayList<>();
+        Worker candidate;
+        do {
+            candidate = new Worker();
+            workers.add(candidate);
+        } while (candidate.call(() -> ThreadSlots.current()[ThreadSlots.INDEX]) <= deadIndex);
+        final Worker setter = candidate;
+        onTerminated.set(() -> {
+            threadLocal.reset();
+            setter.call(() -> {
+                threadLocal.set("Set during scan");
+                return null;
+            });
+        });
+
+        threadLocal.allValues();
+
+        assertThat(setter.call(threadLocal::get), is("Set during scan"));
+        assertThat(threadLocal.allValues(), contains("Set during scan"));
+        workers.forEach(Thread::interrupt);
+    }
+
+    @Test
+    public void terminatedValueIsReclaimedHoldingMonitor() throws InterruptedException {
+        final AtomicReference<Object> threadLocalHolder = new AtomicReference<>();
+        final List<Boolean> holdingMonitor = new CopyOnWriteArrayList<>();
+        final ThreadLocal<String> threadLocal = new ThreadLocal<>(() -> "Initial",
+                value -> holdingMonitor.add(Thread.holdsLock(threadLocalHolder.get())));
+        threadLocalHolder.set(threadLocal);
+
+        Thread thread = new Thread(() -> threadLocal.set("Terminated"));
+        thread.start();
+        thread.join();
+
+        assertThat(threadLocal.allValues(), is(empty()));
+        assertThat(holdingMonitor, contains(true));
+    }
+
+    private static final class Worker extends Thread {
+
+        private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+        Worker() {
+            setDaemon(true);
+            start();
+        }
+
+        <T> T call(final Supplier<T> task) {
+            final CompletableFuture<T> result = new CompletableFuture<>();
+            tasks.add(() -> result.complete(task.get()));
+            return result.join();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    tasks.take().run();
+                }
+            } catch (InterruptedException e) {
+                // finished
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
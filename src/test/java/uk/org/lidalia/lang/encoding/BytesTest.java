@@ -1,16 +1,616 @@
 package uk.org.lidalia.lang.encoding;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import uk.org.lidalia.lang.Bytes;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_16BE;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.Matchers.is;
+import static uk.org.lidalia.lang.encoding.hex.HexEncoder.hex;
 import static org.junit.Assert.assertThat;
 
 public class BytesTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void toStringFormat() {
         assertThat(Bytes.of("Hello World").toString(), is("[72, 101, 108, 108, 111, 32, 87, 111, 114, 108, 100]"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void ofCopiesArray() {
+        byte[] array = "Hello".getBytes(US_ASCII);
+        Bytes bytes = Bytes.of(array);
+
+        array[0] = 'J';
+
+        assertThat(bytes.string(), is("Hello"));
+    }
+
+    @Test
+    public void wrapSharesArray() {
+        byte[] array = "Hello".getBytes(US_ASCII);
+        Bytes bytes = Bytes.wrap(array);
+
+        array[0] = 'J';
+
+        assertThat(bytes.string(), is("Jello"));
+    }
+
+    @Test
+    public void sliceIsEqualToCopyOfRange() {
+        Bytes slice = Bytes.of("Hello World").slice(6, 11);
+
+        assertThat(slice, is(Bytes.of("World")));
+        assertThat(slice.hashCode(), is(Bytes.of("World").hashCode()));
+        assertThat(slice.hashCode(), is(Arrays.asList((byte) 'W', (byte) 'o', (byte) 'r', (byte) 'l', (byte) 'd').hashCode()));
+        assertThat(slice.size(), is(5));
+        assertThat(slice.string(), is("World"));
+        assertThat(slice.array(), is("World".getBytes(US_ASCII)));
+        assertThat(slice.subList(1, 3).string(), is("or"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutsideSlice() {
+        Bytes.of("Hello World").slice(0, 5).get(5);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void sliceOutsideSlice() {
+        Bytes.of("Hello World").slice(0, 5).slice(2, 6);
+    }
+
+    @Test
+    public void wrapRange() {
+        Bytes bytes = Bytes.wrap("Hello World".getBytes(US_ASCII), 6, 5);
+
+        assertThat(bytes.string(), is("World"));
+        assertThat(bytes.encode().decode(), is(bytes));
+    }
+
+    @Test
+    public void copyTo() {
+        byte[] destination = new byte[7];
+
+        Bytes.of("Hello World").slice(6, 11).copyTo(destination, 1);
+
+        assertThat(new String(destination, 1, 5, US_ASCII), is("World"));
+    }
+
+    @Test
+    public void asReadOnlyByteBuffer() {
+        ByteBuffer buffer = Bytes.of("Hello World").slice(6, 11).asReadOnlyByteBuffer();
+
+        assertThat(buffer.position(), is(0));
+        assertThat(buffer.remaining(), is(5));
+        assertThat(buffer.get(0), is((byte) 'W'));
+        assertThat(buffer.isReadOnly(), is(true));
+    }
+
+    @Test
+    public void ofByteBufferCopiesRemainingBytes() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(11);
+        buffer.put("Hello World".getBytes(US_ASCII));
+        buffer.position(6);
+
+        Bytes bytes = Bytes.of(buffer);
+        buffer.put(6, (byte) 'X');
+
+        assertThat(bytes.string(), is("World"));
+        assertThat(buffer.position(), is(6));
+    }
+
+    @Test
+    public void readFromChannel() throws IOException {
+        byte[] array = new byte[20000];
+        new Random(1).nextBytes(array);
+
+        Bytes bytes = Bytes.readFrom(Channels.newChannel(new ByteArrayInputStream(array)));
+
+        assertThat(bytes, is(Bytes.of(array)));
+    }
+
+    @Test
+    public void readFromEmptyChannel() throws IOException {
+        Bytes bytes = Bytes.readFrom(Channels.newChannel(new ByteArrayInputStream(new byte[0])));
+
+        assertThat(bytes.isEmpty(), is(true));
+    }
+
+    @Test
+    public void writeToOutputStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Bytes.of("Hello World").slice(6, 11).writeTo(out);
+
+        assertThat(out.toString("US-ASCII"), is("World"));
+    }
+
+    @Test
+    public void writeToChannel() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Bytes.of("Hello World").slice(0, 5).writeTo(Channels.newChannel(out));
+
+        assertThat(out.toString("US-ASCII"), is("Hello"));
+    }
+
+    @Test
+    public void writeToChannelCannotModifyBytes() throws IOException {
+        Bytes bytes = Bytes.concat(Bytes.of(new byte[200]), Bytes.of("Hello"));
+        List<Boolean> readOnly = new ArrayList<>();
+
+        bytes.writeTo(new WritableByteChannel() {
+            @Override public int write(ByteBuffer src) {
+                readOnly.add(src.isReadOnly());
+                int written = src.remaining();
+                src.position(src.limit());
+                return written;
+            }
+            @Override public boolean isOpen() { return true; }
+            @Override public void close() { }
+        });
+
+        assertThat(readOnly, is(Arrays.asList(true, true)));
+    }
+
+    @Test
+    public void digestCannotModifyBytes() {
+        Bytes bytes = Bytes.of("Hello");
+        List<Boolean> readOnly = new ArrayList<>();
+
+        bytes.digest(new MessageDigest("Spy") {
+            @Override protected void engineUpdate(ByteBuffer input) {
+                readOnly.add(input.isReadOnly());
+                input.position(input.limit());
+            }
+            @Override protected void engineUpdate(byte input) { }
+            @Override protected void engineUpdate(byte[] input, int offset, int length) { }
+            @Override protected byte[] engineDigest() { return new byte[0]; }
+            @Override protected void engineReset() { }
+        });
+
+        assertThat(readOnly, is(Collections.singletonList(true)));
+        assertThat(bytes.string(US_ASCII), is("Hello"));
+    }
+
+    @Test
+    public void mappedFileBehavesLikeArray() throws IOException {
+        byte[] array = new byte[100000];
+        new Random(1).nextBytes(array);
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, array);
+
+        Bytes mapped = Bytes.map(file);
+
+        assertThat(mapped, is(Bytes.of(array)));
+        assertThat(Bytes.of(array), is(mapped));
+        assertThat(mapped.hashCode(), is(Bytes.of(array).hashCode()));
+        assertThat(mapped.slice(10, 5000), is(Bytes.of(array).slice(10, 5000)));
+        assertThat(mapped.slice(10, 5000).encode(), is(Bytes.of(array).slice(10, 5000).encode()));
+        assertThat(mapped.array(), is(array));
+        assertThat(readFully(mapped.inputStream()), is(array));
+    }
+
+    @Test
+    public void mapRegion() throws IOException {
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, "Hello World".getBytes(US_ASCII));
+
+        assertThat(Bytes.map(file, 6, 5).string(), is("World"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mapRegionOutsideFile() throws IOException {
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, "Hello World".getBytes(US_ASCII));
+
+        Bytes.map(file, 6, 6);
+    }
+
+    @Test
+    public void mapEmptyFile() throws IOException {
+        assertThat(Bytes.map(temporaryFolder.newFile().toPath()).isEmpty(), is(true));
+    }
+
+    @Test
+    public void offHeapCopy() throws IOException {
+        Bytes offHeap = Bytes.of("Hello World").offHeapCopy();
+
+        assertThat(offHeap, is(Bytes.of("Hello World")));
+        assertThat(offHeap.asReadOnlyByteBuffer().isDirect(), is(true));
+        assertThat(offHeap.slice(6, 11).string(), is("World"));
+        assertThat(offHeap.toString(), is("[72, 101, 108, 108, 111, 32, 87, 111, 114, 108, 100]"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        offHeap.writeTo(out);
+        assertThat(out.toString("US-ASCII"), is("Hello World"));
+    }
+
+    @Test
+    public void wrapDirectByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(11);
+        buffer.put("Hello World".getBytes(US_ASCII));
+        buffer.flip();
+
+        Bytes bytes = Bytes.wrap(buffer);
+
+        assertThat(bytes.string(), is("Hello World"));
+        assertThat(buffer.position(), is(0));
+    }
+
+    @Test
+    public void concatBehavesLikeArray() throws IOException {
+        byte[] array = new byte[100000];
+        new Random(1).nextBytes(array);
+        Bytes whole = Bytes.of(array);
+
+        Bytes concatenated = Bytes.concat(whole.slice(0, 1000), whole.slice(1000, 5000), whole.slice(5000, 100000));
+
+        assertThat(concatenated, is(whole));
+        assertThat(whole, is(concatenated));
+        assertThat(concatenated.hashCode(), is(whole.hashCode()));
+        assertThat(concatenated.get(4999), is(array[4999]));
+        assertThat(concatenated.get(5000), is(array[5000]));
+        assertThat(concatenated.slice(500, 6000), is(whole.slice(500, 6000)));
+        assertThat(concatenated.slice(1500, 2000), is(whole.slice(1500, 2000)));
+        assertThat(concatenated.array(), is(array));
+        assertThat(concatenated.asReadOnlyByteBuffer(), is(ByteBuffer.wrap(array)));
+        assertThat(readFully(concatenated.inputStream()), is(array));
+    }
+
+    @Test
+    public void concatOfSmallBytes() {
+        assertThat(Bytes.concat(Bytes.of("Hello"), Bytes.of(" "), Bytes.of("World")).string(), is("Hello World"));
+        assertThat(Bytes.concat().isEmpty(), is(true));
+    }
+
+    @Test
+    public void repeatedConcatOntoRope() {
+        final byte[] array = new byte[200 * 1000];
+        new Random(1).nextBytes(array);
+        final Bytes whole = Bytes.wrap(array);
+
+        Bytes concatenated = Bytes.concat(whole.slice(0, 200), whole.slice(200, 400));
+        for (int i = 2; i < 1000; i++) {
+            concatenated = Bytes.concat(concatenated, whole.slice(i * 200, (i + 1) * 200));
+        }
+
+        assertThat(concatenated, is(whole));
+        assertThat(concatenated.slice(1234, 56789), is(whole.slice(1234, 56789)));
+    }
+
+    @Test
+    public void concatOntoSameRopeTwice() {
+        final Bytes rope = Bytes.concat(Bytes.of(new byte[200]), Bytes.of(new byte[200]));
+        final Bytes first = Bytes.concat(rope, Bytes.of("first"));
+        final Bytes second = Bytes.concat(rope, Bytes.of("second"));
+
+        assertThat(rope.size(), is(400));
+        assertThat(first.slice(400, 405).string(), is("first"));
+        assertThat(second.slice(400, 406).string(), is("second"));
+        assertThat(Bytes.concat(first, Bytes.of("!")).slice(400, 406).string(), is("first!"));
+    }
+
+    @Test
+    public void flatten() {
+        Bytes concatenated = Bytes.concat(Bytes.of(new byte[200]), Bytes.of(new byte[200]));
+
+        assertThat(concatenated.flatten(), is(concatenated));
+        assertThat(concatenated.flatten() == concatenated.flatten(), is(true));
+    }
+
+    @Test
+    public void primitiveAccess() {
+        byte[] array = {(byte) 0xFF, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08};
+        Bytes bytes = Bytes.of(array);
+        Bytes concatenated = Bytes.concat(Bytes.of(new byte[200]), bytes).slice(200, 209);
+
+        for (Bytes each : Arrays.asList(bytes, bytes.offHeapCopy(), concatenated)) {
+            assertThat(each.byteAt(0), is((byte) -1));
+            assertThat(each.unsignedByteAt(0), is(255));
+            assertThat(each.getShort(0, BIG_ENDIAN), is((short) 0xFF01));
+            assertThat(each.getShort(0, LITTLE_ENDIAN), is((short) 0x01FF));
+            assertThat(each.getInt(1, BIG_ENDIAN), is(0x01020304));
+            assertThat(each.getInt(1, LITTLE_ENDIAN), is(0x04030201));
+            assertThat(each.getLong(1, BIG_ENDIAN), is(0x0102030405060708L));
+            assertThat(each.getLong(0, LITTLE_ENDIAN), is(0x07060504030201FFL));
+        }
+    }
+
+    @Test
+    public void primitiveAccessAcrossConcatenatedParts() {
+        byte[] array = new byte[300];
+        new Random(1).nextBytes(array);
+        Bytes concatenated = Bytes.concat(Bytes.of(array).slice(0, 150), Bytes.of(array).slice(150, 300));
+        ByteBuffer expected = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 140; i < 150; i++) {
+            assertThat(concatenated.getLong(i, LITTLE_ENDIAN), is(expected.getLong(i)));
+            assertThat(concatenated.getInt(i, LITTLE_ENDIAN), is(expected.getInt(i)));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getLongPastEnd() {
+        Bytes.of(new byte[8]).getLong(1, BIG_ENDIAN);
+    }
+
+    @Test
+    public void forEachByteAndIntStream() {
+        Bytes bytes = Bytes.of("Hello World");
+        StringBuilder visited = new StringBuilder();
+
+        bytes.forEachByte(b -> visited.append((char) b));
+
+        assertThat(visited.toString(), is("Hello World"));
+        assertThat(bytes.intStream().filter(b -> b == 'o').count(), is(2L));
+        assertThat(bytes.offHeapCopy().intStream().sum(), is(bytes.intStream().sum()));
+    }
+
+    @Test
+    public void indexOfByte() {
+        Bytes bytes = Bytes.of("Hello World").slice(1, 11);
+
+        assertThat(bytes.indexOf((byte) 'o'), is(3));
+        assertThat(bytes.lastIndexOf((byte) 'o'), is(6));
+        assertThat(bytes.indexOf((byte) 'H'), is(-1));
+        assertThat(bytes.indexOf(Byte.valueOf((byte) 'o')), is(3));
+        assertThat(bytes.indexOf("o"), is(-1));
+        assertThat(bytes.contains((byte) 'W'), is(true));
+    }
+
+    @Test
+    public void mismatch() {
+        Bytes bytes = Bytes.of("Hello World, Hello World");
+
+        assertThat(bytes.mismatch(Bytes.of("Hello World, Hello World")), is(-1));
+        assertThat(bytes.mismatch(Bytes.of("Hello World, Hello Earth")), is(19));
+        assertThat(bytes.mismatch(Bytes.of("Hello")), is(5));
+        assertThat(bytes.offHeapCopy().mismatch(Bytes.concat(bytes.slice(0, 10), Bytes.of("x"))), is(10));
+        assertThat(Bytes.of("").mismatch(Bytes.of("")), is(-1));
+    }
+
+    @Test
+    public void startsWithAndEndsWith() {
+        Bytes bytes = Bytes.of("Hello World");
+
+        assertThat(bytes.startsWith(Bytes.of("Hello")), is(true));
+        assertThat(bytes.startsWith(Bytes.of("World")), is(false));
+        assertThat(bytes.endsWith(Bytes.of("World")), is(true));
+        assertThat(bytes.endsWith(Bytes.of("Hello")), is(false));
+        assertThat(bytes.startsWith(Bytes.of("Hello World!")), is(false));
+        assertThat(bytes.endsWith(Bytes.of("")), is(true));
+    }
+
+    @Test
+    public void comparesUnsignedLexicographically() {
+        Bytes low = Bytes.of(new byte[] {0x01});
+        Bytes high = Bytes.of(new byte[] {(byte) 0x80});
+        Bytes lowThenHigh = Bytes.of(new byte[] {0x01, (byte) 0x80});
+        List<Bytes> sorted = new ArrayList<>(Arrays.asList(high, lowThenHigh, Bytes.of(""), low));
+
+        Collections.sort(sorted);
+
+        assertThat(sorted, is(Arrays.asList(Bytes.of(""), low, lowThenHigh, high)));
+        assertThat(low.compareTo(Bytes.of(new byte[] {0x01})), is(0));
+    }
+
+    @Test
+    public void equalsAcrossLongWords() {
+        byte[] array = new byte[100];
+        new Random(1).nextBytes(array);
+        byte[] different = array.clone();
+        different[93] ^= 1;
+
+        assertThat(Bytes.of(array).equals(Bytes.of(different)), is(false));
+        assertThat(Bytes.of(array).offHeapCopy().equals(Bytes.of(different)), is(false));
+        assertThat(Bytes.of(array).mismatch(Bytes.of(different)), is(93));
+        assertThat(Bytes.of(array).hashCode(), is(Arrays.hashCode(array)));
+    }
+
+    @Test
+    public void xxHash64() {
+        assertThat(Bytes.of("").xxHash64(), is(0xEF46DB3751D8E999L));
+        assertThat(Bytes.of("abc").xxHash64(), is(0x44BC2CF5AD770999L));
+        assertThat(Bytes.of("Nobody inspects the spammish repetition").xxHash64(), is(0xFBCEA83C8A378BF1L));
+    }
+
+    @Test
+    public void murmur3Hash128() {
+        assertThat(Bytes.of("").murmur3Hash128().encode(hex).toString(), is("00000000000000000000000000000000"));
+        assertThat(Bytes.of("The quick brown fox jumps over the lazy dog").murmur3Hash128().encode(hex).toString(),
+                is("6c1b07bc7bbc4be347939ac4a93c437a"));
+        assertThat(Bytes.of("The quick brown fox jumps over the lazy dog").murmur3Hash128(-1).encode(hex).toString(),
+                is("ce61803cae2cdc7d00cf75b7ab26aab3"));
+        assertThat(Bytes.of("The quick brown fox jumps over the lazy dog").murmur3Hash128(-123456789).encode(hex).toString(),
+                is("d9a2aea98bbc0aacfcb5386247947016"));
+    }
+
+    @Test
+    public void crc32c() {
+        assertThat(Bytes.of("123456789").crc32c(), is(0xE3069283L));
+    }
+
+    @Test
+    public void sha256() {
+        assertThat(Bytes.of("abc").sha256().encode(hex).toString(),
+                is("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDigest() {
+        Bytes.of("abc").digest("NO-SUCH-DIGEST");
+    }
+
+    @Test
+    public void hashesAreIndependentOfStorage() throws IOException {
+        byte[] array = new byte[100003];
+        new Random(1).nextBytes(array);
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, array);
+        Bytes heap = Bytes.of(array);
+
+        for (Bytes each : Arrays.asList(Bytes.map(file), heap.offHeapCopy(),
+                Bytes.concat(heap.slice(0, 33333), heap.slice(33333, 77777), heap.slice(77777, 100003)))) {
+            assertThat(each.xxHash64(7), is(heap.xxHash64(7)));
+            assertThat(each.murmur3Hash128(3), is(heap.murmur3Hash128(3)));
+            assertThat(each.crc32c(), is(heap.crc32c()));
+            assertThat(each.sha256(), is(heap.sha256()));
+        }
+    }
+
+    @Test
+    public void indexOfBytes() {
+        Bytes bytes = Bytes.of("Hello World, Hello World");
+
+        assertThat(bytes.indexOf(Bytes.of("World")), is(6));
+        assertThat(bytes.indexOf(Bytes.of("World"), 7), is(19));
+        assertThat(bytes.lastIndexOf(Bytes.of("Hello")), is(13));
+        assertThat(bytes.indexOf(Bytes.of("Earth")), is(-1));
+    }
+
+    @Test
+    public void indexOfByteScansLongWords() {
+        byte[] array = new byte[100];
+        array[0] = 1;
+        array[42] = 1;
+        array[99] = 1;
+        Bytes bytes = Bytes.of(array);
+
+        for (Bytes each : Arrays.asList(bytes, bytes.offHeapCopy())) {
+            assertThat(each.indexOf((byte) 1, 1), is(42));
+            assertThat(each.indexOf((byte) 1, 43), is(99));
+            assertThat(each.slice(1, 99).lastIndexOf((byte) 1), is(41));
+            assertThat(each.indexOf((byte) 2), is(-1));
+        }
+    }
+
+    @Test
+    public void split() {
+        assertThat(Bytes.of("a,b,,c,").split((byte) ','),
+                is(Arrays.asList(Bytes.of("a"), Bytes.of("b"), Bytes.of(""), Bytes.of("c"), Bytes.of(""))));
+        assertThat(Bytes.of("a::b").split(Bytes.of("::")), is(Arrays.asList(Bytes.of("a"), Bytes.of("b"))));
+    }
+
+    @Test
+    public void stringDecodesAsciiAndNonAscii() {
+        Bytes ascii = Bytes.of("plain ascii text, long enough to be scanned a long at a time");
+        Bytes accented = Bytes.of("caf\u00e9 \u20ac\uD83D\uDE00");
+
+        assertThat(ascii.isAscii(), is(true));
+        assertThat(accented.isAscii(), is(false));
+        assertThat(ascii.string(), is("plain ascii text, long enough to be scanned a long at a time"));
+        assertThat(accented.string(), is("caf\u00e9 \u20ac\uD83D\uDE00"));
+        assertThat(accented.offHeapCopy().string(), is("caf\u00e9 \u20ac\uD83D\uDE00"));
+        assertThat(accented.string(ISO_8859_1), is(new String(accented.array(), ISO_8859_1)));
+        assertThat(accented.string(US_ASCII), is(new String(accented.array(), US_ASCII)));
+    }
+
+    @Test
+    public void isValidUtf8() {
+        assertThat(Bytes.of("").isValidUtf8(), is(true));
+        assertThat(Bytes.of("caf\u00e9 \u20ac\uD83D\uDE00").isValidUtf8(), is(true));
+        assertThat(bytes(0xC3).isValidUtf8(), is(false));
+        assertThat(bytes(0xC0, 0xAF).isValidUtf8(), is(false));
+        assertThat(bytes(0xE0, 0x80, 0xAF).isValidUtf8(), is(false));
+        assertThat(bytes(0xED, 0xA0, 0x80).isValidUtf8(), is(false));
+        assertThat(bytes(0xF4, 0x90, 0x80, 0x80).isValidUtf8(), is(false));
+        assertThat(bytes(0x80).isValidUtf8(), is(false));
+    }
+
+    @Test
+    public void isValidUtf8AcrossChunks() {
+        Bytes euro = Bytes.of("\u20ac");
+
+        assertThat(Bytes.concat(Bytes.of("a long run of ascii before a "), euro.slice(0, 1).offHeapCopy(), euro.slice(1, 3))
+                .isValidUtf8(), is(true));
+        assertThat(Bytes.concat(Bytes.of("a long run of ascii before a "), euro.slice(0, 2), Bytes.of("x"))
+                .isValidUtf8(), is(false));
+    }
+
+    @Test
+    public void decodeRangeIntoStringBuilder() {
+        Bytes bytes = Bytes.of("key=caf\u00e9;other");
+
+        assertThat(bytes.decode(0, 3, UTF_8, new StringBuilder("[")).toString(), is("[key"));
+        assertThat(bytes.decode(4, 9, UTF_8, new StringBuilder()).toString(), is("caf\u00e9"));
+    }
+
+    @Test
+    public void decodeLongNonAsciiRangeIntoStringBuilder() {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            expected.append("caf\u00e9 \u20ac\uD83D\uDE00 ");
+        }
+        Bytes bytes = Bytes.of(expected.toString());
+
+        assertThat(bytes.decode(0, bytes.size(), UTF_8, new StringBuilder()).toString(), is(expected.toString()));
+        assertThat(bytes.offHeapCopy().decode(5, 9, UTF_8, new StringBuilder()).toString(), is(" \u20ac"));
+        assertThat(bytes(0x61, 0xC3).decode(0, 2, UTF_8, new StringBuilder()).toString(), is("a\uFFFD"));
+        assertThat(Bytes.wrap("\u00e9t\u00e9".getBytes(UTF_16BE)).decode(0, 6, UTF_16BE, new StringBuilder()).toString(),
+                is("\u00e9t\u00e9"));
+    }
+
+    @Test
+    public void decodeRangeIntoCharBuffer() {
+        Bytes bytes = Bytes.of("key=caf\u00e9;other").offHeapCopy();
+        CharBuffer destination = CharBuffer.allocate(8);
+
+        bytes.decode(0, 4, UTF_8, destination);
+        bytes.decode(4, 9, UTF_8, destination);
+
+        destination.flip();
+        assertThat(destination.toString(), is("key=caf\u00e9"));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void decodeIntoFullCharBuffer() {
+        Bytes.of("too long").decode(0, 8, UTF_8, CharBuffer.allocate(7));
+    }
+
+    private static Bytes bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return Bytes.wrap(bytes);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}